@@ -1,55 +1,150 @@
-/**
- *
- */
-package one.tracking.framework.generator;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpRequest;
-import org.springframework.http.client.ClientHttpRequestExecution;
-import org.springframework.http.client.ClientHttpRequestInterceptor;
-import org.springframework.http.client.ClientHttpResponse;
-
-public class LoggingRequestInterceptor implements ClientHttpRequestInterceptor {
-
-  final static Logger log = LoggerFactory.getLogger(LoggingRequestInterceptor.class);
-
-  @Override
-  public ClientHttpResponse intercept(final HttpRequest request, final byte[] body,
-      final ClientHttpRequestExecution execution) throws IOException {
-    traceRequest(request, body);
-    final ClientHttpResponse response = execution.execute(request, body);
-    traceResponse(response);
-    return response;
-  }
-
-  private void traceRequest(final HttpRequest request, final byte[] body) throws IOException {
-    log.info("===========================request begin================================================");
-    log.debug("URI         : {}", request.getURI());
-    log.debug("Method      : {}", request.getMethod());
-    log.debug("Headers     : {}", request.getHeaders());
-    log.debug("Request body: {}", new String(body, "UTF-8"));
-    log.info("==========================request end================================================");
-  }
-
-  private void traceResponse(final ClientHttpResponse response) throws IOException {
-    final StringBuilder inputStringBuilder = new StringBuilder();
-    final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(response.getBody(), "UTF-8"));
-    String line = bufferedReader.readLine();
-    while (line != null) {
-      inputStringBuilder.append(line);
-      inputStringBuilder.append('\n');
-      line = bufferedReader.readLine();
-    }
-    log.info("============================response begin==========================================");
-    log.debug("Status code  : {}", response.getStatusCode());
-    log.debug("Status text  : {}", response.getStatusText());
-    log.debug("Headers      : {}", response.getHeaders());
-    log.debug("Response body: {}", inputStringBuilder.toString());
-    log.info("=======================response end=================================================");
-  }
-
-}
+/**
+ *
+ */
+package one.tracking.framework.generator;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Logs a sample of the requests and responses on DEBUG level. Nothing is logged or buffered unless
+ * DEBUG is enabled and the request is sampled.
+ * <p>
+ * Only the first bytes of a sampled response body are read ahead for logging and replayed to the
+ * caller, so the response is still streamed instead of being kept in memory twice.
+ */
+public class LoggingRequestInterceptor implements ClientHttpRequestInterceptor {
+
+  final static Logger log = LoggerFactory.getLogger(LoggingRequestInterceptor.class);
+
+  private static final Pattern API_KEY = Pattern.compile("(?i)(apiKey=)[^&]*");
+
+  private final double sampleRate;
+
+  private final int bodyLimit;
+
+  /**
+   *
+   * @param sampleRate the share of requests to be logged between 0 and 1
+   * @param bodyLimit the maximum amount of bytes of a request or response body to be logged
+   */
+  public LoggingRequestInterceptor(final double sampleRate, final int bodyLimit) {
+    this.sampleRate = sampleRate;
+    this.bodyLimit = Math.max(0, bodyLimit);
+  }
+
+  @Override
+  public ClientHttpResponse intercept(final HttpRequest request, final byte[] body,
+      final ClientHttpRequestExecution execution) throws IOException {
+
+    if (!log.isDebugEnabled() || !isSampled())
+      return execution.execute(request, body);
+
+    final String uri = API_KEY.matcher(request.getURI().toString()).replaceAll("$1***");
+
+    log.debug("Request {} {} headers: {} body: {}", request.getMethod(), uri, request.getHeaders(),
+        toString(body, Math.min(body.length, this.bodyLimit), body.length > this.bodyLimit));
+
+    final long startNanos = System.nanoTime();
+    final ClientHttpResponse response = execution.execute(request, body);
+    final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+    final SampledResponse sampled = new SampledResponse(response, this.bodyLimit);
+
+    log.debug("Response {} {} in {} ms: {} {} headers: {} body: {}", request.getMethod(), uri, millis,
+        response.getRawStatusCode(), response.getStatusText(), response.getHeaders(), sampled.getSample());
+
+    return sampled;
+  }
+
+  private boolean isSampled() {
+    return this.sampleRate >= 1 || this.sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < this.sampleRate;
+  }
+
+  private static String toString(final byte[] bytes, final int length, final boolean truncated) {
+    final String text = new String(bytes, 0, length, StandardCharsets.UTF_8);
+    return truncated ? text + "..." : text;
+  }
+
+  /*
+   * Reads ahead the first bytes of the body, which are replayed before the remaining body.
+   */
+  private static class SampledResponse implements ClientHttpResponse {
+
+    private final ClientHttpResponse response;
+    private final int limit;
+
+    private InputStream body;
+
+    private SampledResponse(final ClientHttpResponse response, final int limit) {
+      this.response = response;
+      this.limit = limit;
+    }
+
+    private String getSample() {
+      try {
+        final InputStream in = getBody();
+        in.mark(this.limit + 1);
+
+        final byte[] sample = new byte[this.limit + 1];
+        int length = 0;
+        int read;
+        while (length < sample.length && (read = in.read(sample, length, sample.length - length)) != -1) {
+          length += read;
+        }
+
+        in.reset();
+        return LoggingRequestInterceptor.toString(sample, Math.min(length, this.limit), length > this.limit);
+
+      } catch (final IOException e) {
+        // Left to the caller reading the body
+        return "<unreadable: " + e.getMessage() + ">";
+      }
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      if (this.body == null)
+        this.body = new BufferedInputStream(this.response.getBody(), this.limit + 1);
+      return this.body;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return this.response.getHeaders();
+    }
+
+    @Override
+    public HttpStatus getStatusCode() throws IOException {
+      return this.response.getStatusCode();
+    }
+
+    @Override
+    public int getRawStatusCode() throws IOException {
+      return this.response.getRawStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      return this.response.getStatusText();
+    }
+
+    @Override
+    public void close() {
+      this.response.close();
+    }
+  }
+}
@@ -12,7 +12,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
-import org.springframework.http.client.BufferingClientHttpRequestFactory;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
@@ -25,6 +24,12 @@ public class SpatialSpringBootAppApplication {
   @Value("${app.envelope.end}")
   private String envEnd;
 
+  @Value("${app.http.log.sample.rate:0.01}")
+  private double httpLogSampleRate;
+
+  @Value("${app.http.log.body.limit:1024}")
+  private int httpLogBodyLimit;
+
   public static void main(final String[] args) {
     SpringApplication.run(SpatialSpringBootAppApplication.class, args);
   }
@@ -36,10 +41,10 @@ public class SpatialSpringBootAppApplication {
 
   @Bean
   RestTemplate restTemplate() {
-    final BufferingClientHttpRequestFactory buff =
-        new BufferingClientHttpRequestFactory(new SimpleClientHttpRequestFactory());
-    final RestTemplate restTemplate = new RestTemplate(buff);
-    restTemplate.setInterceptors(Collections.singletonList(new LoggingRequestInterceptor()));
+    // Responses are streamed, the interceptor only reads ahead the logged part of sampled responses
+    final RestTemplate restTemplate = new RestTemplate(new SimpleClientHttpRequestFactory());
+    restTemplate.setInterceptors(Collections.singletonList(
+        new LoggingRequestInterceptor(this.httpLogSampleRate, this.httpLogBodyLimit)));
 
     return restTemplate;
   }
@@ -0,0 +1,134 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.benchmark;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import one.tracking.framework.generator.entity.SpatialEvent;
+import one.tracking.framework.generator.repo.SpatialEventRepository;
+
+/**
+ * Compares the query by exact userId backed by the index on userId and timestamp to the user filter by
+ * <code>LIKE</code> on a synthetic data set. Both queries select the same events. Only active with the
+ * <code>benchmark</code> profile, e.g. <code>--spring.profiles.active=benchmark --app.benchmark.rows=1000000</code>,
+ * which also disables importing, generating and exporting data.
+ */
+@Component
+@Profile("benchmark")
+public class QueryBenchmark implements ApplicationRunner {
+
+  private static final Logger LOG = LoggerFactory.getLogger(QueryBenchmark.class);
+
+  private static final Instant START = Instant.parse("2020-03-10T06:00:00Z");
+
+  @Autowired
+  private SpatialEventRepository repository;
+
+  @Autowired
+  private GeometryFactory geometryFactory;
+
+  @Autowired
+  private Envelope envelope;
+
+  @Value("${app.benchmark.rows:1000000}")
+  private int rows;
+
+  @Value("${app.benchmark.users:1000}")
+  private int users;
+
+  @Value("${app.benchmark.iterations:20}")
+  private int iterations;
+
+  @Value("${app.persistence.chunk.size:10000}")
+  private int chunkSize;
+
+  @Override
+  public void run(final ApplicationArguments args) throws Exception {
+
+    final Random random = new Random(42);
+    final int eventsPerUser = Math.max(1, this.rows / Math.max(1, this.users));
+    final int iterations = Math.max(1, this.iterations);
+
+    LOG.info("Benchmark: inserting {} events of {} users...", (long) eventsPerUser * this.users, this.users);
+    insertEvents(random, eventsPerUser);
+
+    // The envelope is given as lat/lng while the locations are stored as lng/lat
+    final Geometry bounds = this.geometryFactory.toGeometry(new Envelope(this.envelope.getMinY(),
+        this.envelope.getMaxY(), this.envelope.getMinX(), this.envelope.getMaxX()));
+    // Covers all events of a user, so both queries select the same events
+    final Instant end = START.plus(Duration.ofMinutes(eventsPerUser));
+
+    long likeNanos = 0;
+    long indexedNanos = 0;
+
+    for (int i = 0; i < iterations; i++) {
+
+      final String userId = toUserId(random.nextInt(this.users));
+
+      final long likeStart = System.nanoTime();
+      final int likeCount = this.repository.findAllWithin(bounds, "%" + userId + "%").size();
+      likeNanos += System.nanoTime() - likeStart;
+
+      final long indexedStart = System.nanoTime();
+      final int indexedCount = this.repository.findByUserWithin(bounds, userId, START, end).size();
+      indexedNanos += System.nanoTime() - indexedStart;
+
+      if (likeCount != indexedCount)
+        throw new IllegalStateException("The queries selected " + likeCount + " and " + indexedCount + " events");
+    }
+
+    LOG.info("Benchmark: LIKE filter: {} ms, exact userId: {} ms per query (speedup {}x)",
+        TimeUnit.NANOSECONDS.toMillis(likeNanos / iterations),
+        TimeUnit.NANOSECONDS.toMillis(indexedNanos / iterations),
+        String.format("%.1f", (double) likeNanos / Math.max(1, indexedNanos)));
+  }
+
+  private void insertEvents(final Random random, final int eventsPerUser) {
+
+    final List<SpatialEvent> chunk = new ArrayList<>(this.chunkSize);
+
+    for (int user = 0; user < this.users; user++) {
+
+      final String userId = toUserId(user);
+
+      for (int i = 0; i < eventsPerUser; i++) {
+
+        final double lng = this.envelope.getMinY() + random.nextDouble() * this.envelope.getHeight();
+        final double lat = this.envelope.getMinX() + random.nextDouble() * this.envelope.getWidth();
+
+        chunk.add(SpatialEvent.builder()
+            .userId(userId)
+            .timestampCreate(START.plus(Duration.ofMinutes(i)))
+            .location(this.geometryFactory.createPoint(new Coordinate(lng, lat)))
+            .build());
+
+        if (chunk.size() == this.chunkSize) {
+          this.repository.persistAll(chunk);
+          chunk.clear();
+        }
+      }
+    }
+    this.repository.persistAll(chunk);
+  }
+
+  private static String toUserId(final int user) {
+    return String.format("user-%06d", user);
+  }
+}
@@ -5,27 +5,37 @@ import java.time.Instant;
 import javax.persistence.Basic;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
 import javax.persistence.Version;
 import org.locationtech.jts.geom.Point;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import one.tracking.framework.generator.index.SpatialEventIndexListener;
 
 @Data
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@Table(indexes = {
+    @Index(name = "idx_spatial_event_user_time", columnList = "userId, timestampCreate"),
+    @Index(name = "idx_spatial_event_time", columnList = "timestampCreate")})
+@EntityListeners(SpatialEventIndexListener.class)
 public class SpatialEvent implements Serializable, Cloneable {
 
   private static final long serialVersionUID = 4068404547785866893L;
 
   @Id
-  @GeneratedValue(strategy = GenerationType.AUTO)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "spatial_event_seq")
+  @SequenceGenerator(name = "spatial_event_seq", sequenceName = "spatial_event_seq", allocationSize = 50)
   private Long id;
 
   @Version
@@ -39,7 +49,8 @@ public class SpatialEvent implements Serializable, Cloneable {
   private int timestampOffset;
 
   // @Column(columnDefinition = "POINT") // this type is known by MySQL
-  @Column(columnDefinition = "geometry")
+  // Spatial indexes require the column to be not null
+  @Column(columnDefinition = "geometry", nullable = false)
   private Point location;
 
   // @Column(columnDefinition = "POLYGON") // this type is known by MySQL
@@ -1,23 +1,23 @@
-/**
- *
- */
-package one.tracking.framework.generator.hereapi;
-
-import lombok.AllArgsConstructor;
-import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
-
-/**
- * @author Marko Voß
- *
- */
-@Data
-@Builder
-@NoArgsConstructor
-@AllArgsConstructor
-public class Place {
-
-  private String type;
-  private LatLng location;
-}
+/**
+ *
+ */
+package one.tracking.framework.generator.hereapi;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Marko Voß
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Place {
+
+  private String type;
+  private LatLng location;
+}
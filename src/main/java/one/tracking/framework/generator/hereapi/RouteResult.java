@@ -1,23 +1,23 @@
-/**
- *
- */
-package one.tracking.framework.generator.hereapi;
-
-import java.util.List;
-import lombok.AllArgsConstructor;
-import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
-
-/**
- * @author Marko Voß
- *
- */
-@Data
-@Builder
-@NoArgsConstructor
-@AllArgsConstructor
-public class RouteResult {
-
-  private List<Route> routes;
-}
+/**
+ *
+ */
+package one.tracking.framework.generator.hereapi;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Marko Voß
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RouteResult {
+
+  private List<Route> routes;
+}
@@ -0,0 +1,299 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.locationtech.jts.geom.Coordinate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory uniform grid over the locations of all persisted events. Distances are planar and measured
+ * in the units of the coordinates (degrees), matching the semantics of <code>dwithin</code> of the
+ * spatial database.
+ * <p>
+ * The index is kept up to date by {@link SpatialEventIndexListener} whenever a transaction persisting
+ * or removing events has been committed.
+ */
+@Component
+public class SpatialEventIndex {
+
+  /*
+   * Up to this radius (in cells) neighbors are looked up cell by cell. Beyond it the occupied cells are
+   * grouped into coarser cells first, so the lookup costs do not grow with the square of the distance.
+   */
+  private static final int MAX_DIRECT_RADIUS = 2;
+
+  private final Map<Long, Cell> cells = new HashMap<>();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final double cellSize;
+
+  private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+  private int size = 0;
+
+  public SpatialEventIndex(@Value("${app.index.cell.size:0.001}") final double cellSize) {
+    if (cellSize <= 0)
+      throw new IllegalArgumentException("Cell size must be greater than 0");
+    this.cellSize = cellSize;
+  }
+
+  /**
+   *
+   * @param id the id of the event
+   * @param x
+   * @param y
+   */
+  public void add(final long id, final double x, final double y) {
+    final int cellX = toCell(x);
+    final int cellY = toCell(y);
+
+    this.lock.writeLock().lock();
+    try {
+      this.cells.computeIfAbsent(key(cellX, cellY), k -> new Cell(cellX, cellY)).add(id, x, y);
+      this.size++;
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+
+    for (final ChangeListener listener : this.listeners) {
+      listener.changed(x, y);
+    }
+  }
+
+  /**
+   *
+   * @param id the id of the event
+   * @param x
+   * @param y
+   */
+  public void remove(final long id, final double x, final double y) {
+    final long key = key(toCell(x), toCell(y));
+
+    boolean removed = false;
+
+    this.lock.writeLock().lock();
+    try {
+      final Cell cell = this.cells.get(key);
+      if (cell != null && cell.remove(id)) {
+        removed = true;
+        this.size--;
+        if (cell.size == 0)
+          this.cells.remove(key);
+      }
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+
+    if (removed) {
+      for (final ChangeListener listener : this.listeners) {
+        listener.changed(x, y);
+      }
+    }
+  }
+
+  /**
+   * Registers a listener notified of every added or removed event, e.g. to invalidate caches derived
+   * from the persisted events at the location of the change.
+   *
+   * @param listener
+   */
+  public void addChangeListener(final ChangeListener listener) {
+    this.listeners.add(listener);
+  }
+
+  public int size() {
+    this.lock.readLock().lock();
+    try {
+      return this.size;
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Finds all events having at least one other event within the given distance.
+   *
+   * @param distance the maximum distance in the units of the coordinates
+   * @return the coordinates of the matching events, each event is contained once
+   */
+  public List<Coordinate> findCloseEvents(final double distance) {
+
+    final List<Coordinate> result = new ArrayList<>();
+    if (distance < 0)
+      return result;
+
+    final double distanceSquared = distance * distance;
+    final double cellDiagonalSquared = 2 * this.cellSize * this.cellSize;
+    final int radius = (int) Math.min(Integer.MAX_VALUE / 4, Math.ceil(distance / this.cellSize));
+
+    this.lock.readLock().lock();
+    try {
+
+      final Map<Long, List<Cell>> coarse = radius > MAX_DIRECT_RADIUS ? groupCells(radius) : null;
+      final Map<Long, List<Cell>> neighborhoods = new HashMap<>();
+      final List<Cell> directNeighbors = new ArrayList<>();
+
+      for (final Cell cell : this.cells.values()) {
+
+        final List<Cell> neighbors = coarse == null
+            ? collectNeighbors(cell, radius, directNeighbors)
+            : getNeighborhood(cell, radius, coarse, neighborhoods);
+
+        // All events of a cell are within the distance of each other if the cell fits into the distance
+        final boolean sameCellMatches = cell.size > 1 && cellDiagonalSquared <= distanceSquared;
+
+        for (int i = 0; i < cell.size; i++) {
+          if (sameCellMatches || hasNeighbor(cell, i, neighbors, radius, distanceSquared)) {
+            result.add(new Coordinate(cell.xs[i], cell.ys[i]));
+          }
+        }
+      }
+
+    } finally {
+      this.lock.readLock().unlock();
+    }
+    return result;
+  }
+
+  private boolean hasNeighbor(final Cell cell, final int index, final List<Cell> neighbors, final int radius,
+      final double distanceSquared) {
+
+    final double x = cell.xs[index];
+    final double y = cell.ys[index];
+
+    for (final Cell neighbor : neighbors) {
+
+      if (Math.abs(neighbor.cellX - cell.cellX) > radius || Math.abs(neighbor.cellY - cell.cellY) > radius)
+        continue;
+
+      for (int j = 0; j < neighbor.size; j++) {
+        if (neighbor == cell && j == index)
+          continue;
+        final double dx = neighbor.xs[j] - x;
+        final double dy = neighbor.ys[j] - y;
+        if (dx * dx + dy * dy <= distanceSquared)
+          return true;
+      }
+    }
+    return false;
+  }
+
+  private List<Cell> collectNeighbors(final Cell cell, final int radius, final List<Cell> neighbors) {
+
+    neighbors.clear();
+    for (int dx = -radius; dx <= radius; dx++) {
+      for (int dy = -radius; dy <= radius; dy++) {
+        final Cell neighbor = this.cells.get(key(cell.cellX + dx, cell.cellY + dy));
+        if (neighbor != null)
+          neighbors.add(neighbor);
+      }
+    }
+    return neighbors;
+  }
+
+  /*
+   * All cells of the coarse cell containing the given cell and of its eight surrounding coarse cells. The
+   * result is shared by all cells of the same coarse cell.
+   */
+  private List<Cell> getNeighborhood(final Cell cell, final int radius, final Map<Long, List<Cell>> coarse,
+      final Map<Long, List<Cell>> neighborhoods) {
+
+    final int coarseX = Math.floorDiv(cell.cellX, radius);
+    final int coarseY = Math.floorDiv(cell.cellY, radius);
+
+    return neighborhoods.computeIfAbsent(key(coarseX, coarseY), k -> {
+      final List<Cell> neighbors = new ArrayList<>();
+      for (int dx = -1; dx <= 1; dx++) {
+        for (int dy = -1; dy <= 1; dy++) {
+          final List<Cell> group = coarse.get(key(coarseX + dx, coarseY + dy));
+          if (group != null)
+            neighbors.addAll(group);
+        }
+      }
+      return neighbors;
+    });
+  }
+
+  private Map<Long, List<Cell>> groupCells(final int radius) {
+    final Map<Long, List<Cell>> coarse = new HashMap<>();
+    for (final Cell cell : this.cells.values()) {
+      coarse.computeIfAbsent(key(Math.floorDiv(cell.cellX, radius), Math.floorDiv(cell.cellY, radius)),
+          k -> new ArrayList<>()).add(cell);
+    }
+    return coarse;
+  }
+
+  private int toCell(final double value) {
+    return (int) Math.floor(value / this.cellSize);
+  }
+
+  private static long key(final int cellX, final int cellY) {
+    return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Notified of every added or removed event.
+   */
+  @FunctionalInterface
+  public interface ChangeListener {
+
+    /**
+     *
+     * @param x the x coordinate (longitude) of the changed event
+     * @param y the y coordinate (latitude) of the changed event
+     */
+    void changed(double x, double y);
+  }
+
+  private static class Cell {
+
+    private final int cellX;
+    private final int cellY;
+
+    private long[] ids = new long[4];
+    private double[] xs = new double[4];
+    private double[] ys = new double[4];
+    private int size = 0;
+
+    private Cell(final int cellX, final int cellY) {
+      this.cellX = cellX;
+      this.cellY = cellY;
+    }
+
+    private void add(final long id, final double x, final double y) {
+      if (this.size == this.ids.length) {
+        this.ids = Arrays.copyOf(this.ids, this.size * 2);
+        this.xs = Arrays.copyOf(this.xs, this.size * 2);
+        this.ys = Arrays.copyOf(this.ys, this.size * 2);
+      }
+      this.ids[this.size] = id;
+      this.xs[this.size] = x;
+      this.ys[this.size] = y;
+      this.size++;
+    }
+
+    private boolean remove(final long id) {
+      for (int i = 0; i < this.size; i++) {
+        if (this.ids[i] == id) {
+          final int last = --this.size;
+          this.ids[i] = this.ids[last];
+          this.xs[i] = this.xs[last];
+          this.ys[i] = this.ys[last];
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
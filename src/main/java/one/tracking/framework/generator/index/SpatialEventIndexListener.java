@@ -0,0 +1,110 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import org.locationtech.jts.geom.Point;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import one.tracking.framework.generator.entity.SpatialEvent;
+
+/**
+ * JPA entity listener keeping the {@link SpatialEventIndex} up to date. Instances are created by
+ * Hibernate using the Spring bean container.
+ * <p>
+ * Changes within a transaction are collected and applied to the index after the transaction has been
+ * committed, so events of a rolled back transaction never become visible in the index.
+ */
+public class SpatialEventIndexListener {
+
+  @Autowired
+  private SpatialEventIndex index;
+
+  @PostPersist
+  public void onPersist(final SpatialEvent event) {
+    final Point location = event.getLocation();
+    if (location != null && event.getId() != null)
+      onChange(new Change(event.getId(), location.getX(), location.getY(), true));
+  }
+
+  @PostRemove
+  public void onRemove(final SpatialEvent event) {
+    final Point location = event.getLocation();
+    if (location != null && event.getId() != null)
+      onChange(new Change(event.getId(), location.getX(), location.getY(), false));
+  }
+
+  /*
+   * Collects the change for the current transaction. Without a transaction, the change is applied at once.
+   */
+  private void onChange(final Change change) {
+
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      change.apply(this.index);
+      return;
+    }
+
+    PendingChanges changes = (PendingChanges) TransactionSynchronizationManager.getResource(this.index);
+    if (changes == null) {
+      changes = new PendingChanges(this.index);
+      TransactionSynchronizationManager.bindResource(this.index, changes);
+      TransactionSynchronizationManager.registerSynchronization(changes);
+    }
+    changes.add(change);
+  }
+
+  private static class PendingChanges extends TransactionSynchronizationAdapter {
+
+    private final SpatialEventIndex index;
+
+    private final List<Change> changes = new ArrayList<>();
+
+    private PendingChanges(final SpatialEventIndex index) {
+      this.index = index;
+    }
+
+    private void add(final Change change) {
+      this.changes.add(change);
+    }
+
+    @Override
+    public void afterCommit() {
+      for (final Change change : this.changes) {
+        change.apply(this.index);
+      }
+    }
+
+    @Override
+    public void afterCompletion(final int status) {
+      TransactionSynchronizationManager.unbindResourceIfPossible(this.index);
+    }
+  }
+
+  private static class Change {
+
+    private final long id;
+    private final double x;
+    private final double y;
+    private final boolean added;
+
+    private Change(final long id, final double x, final double y, final boolean added) {
+      this.id = id;
+      this.x = x;
+      this.y = y;
+      this.added = added;
+    }
+
+    private void apply(final SpatialEventIndex index) {
+      if (this.added) {
+        index.add(this.id, this.x, this.y);
+      } else {
+        index.remove(this.id, this.x, this.y);
+      }
+    }
+  }
+}
@@ -1,7 +1,10 @@
 package one.tracking.framework.generator.repo;
 
+import java.time.Instant;
 import java.util.List;
 import org.locationtech.jts.geom.Geometry;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -10,23 +13,88 @@ import one.tracking.framework.generator.entity.SpatialEvent;
 /**
  * @author mstahv
  */
-public interface SpatialEventRepository extends JpaRepository<SpatialEvent, Long> {
+public interface SpatialEventRepository extends JpaRepository<SpatialEvent, Long>, SpatialEventRepositoryCustom {
 
   /**
-   * Example method of a GIS query. This uses Hibernate spatial extensions, so it does not work with
-   * other JPA implementations.
+   * Events of a single user within the given geometry and time range. Backed by the index on userId and
+   * timestamp.
    *
    * @param bounds the geometry
-   * @param titleFilter the filter string
-   * @return SpatialEvents inside given geometry and with given filter for the title
+   * @param userId the exact userId
+   * @param from the inclusive start of the time range
+   * @param to the exclusive end of the time range
+   * @return SpatialEvents ordered by timestamp
    */
-  @Query(value = "SELECT se FROM SpatialEvent se WHERE within(se.location, :bounds) = true AND se.userId LIKE :filter")
-  List<SpatialEvent> findAllWithin(@Param("bounds") Geometry bounds, @Param("filter") String filter);
+  @Query(value = "SELECT se FROM SpatialEvent se WHERE se.userId = :userId"
+      + " AND se.timestampCreate >= :from AND se.timestampCreate < :to"
+      + " AND within(se.location, :bounds) = true ORDER BY se.timestampCreate")
+  List<SpatialEvent> findByUserWithin(@Param("bounds") Geometry bounds, @Param("userId") String userId,
+      @Param("from") Instant from, @Param("to") Instant to);
 
-  @Query(value = "SELECT b FROM SpatialEvent a, SpatialEvent b WHERE dwithin(a.location, b.location, :distance) = true")
-  List<SpatialEvent> findAllWithin(@Param("distance") Double distance);
+  /**
+   * Keyset pagination over all events ordered by id. Use {@link PageRequest#of(int, int)} with page 0
+   * and pass the id of the last event of the previous page to fetch the next one.
+   *
+   * @param lastId the id of the last event of the previous page or 0 for the first page
+   * @param pageable the size of the page
+   * @return SpatialEvents with an id greater than the given one ordered by id
+   */
+  @Query(value = "SELECT se FROM SpatialEvent se WHERE se.id > :lastId ORDER BY se.id")
+  List<SpatialEvent> findPageAfter(@Param("lastId") long lastId, Pageable pageable);
+
+  /**
+   * First page of all events ordered by userId, timestamp and id.
+   *
+   * @param pageable the size of the page
+   * @return SpatialEvents ordered by userId, timestamp and id
+   * @see #findPageOrderedByUserAfter(String, Instant, long, Pageable)
+   */
+  @Query(value = "SELECT se FROM SpatialEvent se ORDER BY se.userId, se.timestampCreate, se.id")
+  List<SpatialEvent> findFirstPageOrderedByUser(Pageable pageable);
+
+  /**
+   * Keyset pagination over all events ordered by userId, timestamp and id. Pass the values of the last
+   * event of the previous page to fetch the next one.
+   *
+   * @param userId the userId of the last event of the previous page
+   * @param timestamp the timestamp of the last event of the previous page
+   * @param id the id of the last event of the previous page
+   * @param pageable the size of the page
+   * @return SpatialEvents following the given one ordered by userId, timestamp and id
+   */
+  @Query(value = "SELECT se FROM SpatialEvent se WHERE se.userId > :userId"
+      + " OR (se.userId = :userId AND (se.timestampCreate > :timestamp"
+      + " OR (se.timestampCreate = :timestamp AND se.id > :id)))"
+      + " ORDER BY se.userId, se.timestampCreate, se.id")
+  List<SpatialEvent> findPageOrderedByUserAfter(@Param("userId") String userId,
+      @Param("timestamp") Instant timestamp, @Param("id") long id, Pageable pageable);
 
-  @Query(value = "SELECT DISTANCE(a.location, b.location) FROM SpatialEvent a, SpatialEvent b")
-  List<Double> findAllWithin();
+  /**
+   *
+   * @return the distinct userIds of all events in ascending order
+   */
+  @Query(value = "SELECT DISTINCT se.userId FROM SpatialEvent se ORDER BY se.userId")
+  List<String> findUserIds();
+
+  /**
+   * Keyset pagination over the events of a single user ordered by timestamp and id. Backed by the index
+   * on userId and timestamp. Pass the values of the last event of the previous page to fetch the next
+   * one, or the start of the time range and an id of -1 to fetch the first one.
+   *
+   * @param userId the exact userId
+   * @param timestamp the timestamp of the last event of the previous page
+   * @param id the id of the last event of the previous page
+   * @param to the exclusive end of the time range
+   * @param pageable the size of the page
+   * @return the events following the given one ordered by timestamp and id, not managed by the
+   *         persistence context
+   */
+  @Query(value = "SELECT new one.tracking.framework.generator.repo.TrackPoint("
+      + "se.id, se.userId, se.timestampCreate, se.timestampOffset, se.location)"
+      + " FROM SpatialEvent se WHERE se.userId = :userId AND se.timestampCreate < :to"
+      + " AND (se.timestampCreate > :timestamp OR (se.timestampCreate = :timestamp AND se.id > :id))"
+      + " ORDER BY se.timestampCreate, se.id")
+  List<TrackPoint> findTrackPageAfter(@Param("userId") String userId, @Param("timestamp") Instant timestamp,
+      @Param("id") long id, @Param("to") Instant to, Pageable pageable);
 
 }
@@ -0,0 +1,116 @@
+package one.tracking.framework.generator.repo;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.springframework.data.domain.Sort;
+import one.tracking.framework.generator.entity.SpatialEvent;
+
+/**
+ * Bulk operations for {@link SpatialEvent}s which are not covered by Spring Data.
+ */
+public interface SpatialEventRepositoryCustom {
+
+  /**
+   * Persists all given new events within a single transaction. The persistence context is flushed and
+   * cleared in chunks, so the inserts are sent as JDBC batches and the managed entities do not pile up
+   * in memory.
+   *
+   * @param events the events to be persisted. Must not have an id assigned yet.
+   */
+  void persistAll(Collection<SpatialEvent> events);
+
+  /**
+   * Streams id, userId and location of all events created within the given time range without loading
+   * the events themselves. Events are visited ordered by id.
+   *
+   * @param from the inclusive start of the time range or null
+   * @param to the exclusive end of the time range or null
+   * @param limit the maximum amount of events to visit or 0 for all
+   * @param visitor receiving each event
+   * @return the amount of events visited
+   */
+  long forEachLocation(Instant from, Instant to, int limit, LocationVisitor visitor);
+
+  /**
+   * Streams userId, timestamp and location of all events created within the given time range without
+   * loading the events themselves. Events are visited in no particular order.
+   *
+   * @param from the inclusive start of the time range or null
+   * @param to the exclusive end of the time range or null
+   * @param visitor receiving each event
+   * @return the amount of events visited
+   */
+  long forEachEvent(Instant from, Instant to, EventVisitor visitor);
+
+  /**
+   * Streams userId, timestamp and location of all events within the given geometry and with a userId
+   * matching the given filter without loading the events themselves. Events are visited in no
+   * particular order.
+   *
+   * @param bounds the geometry
+   * @param filter the <code>LIKE</code> pattern of the userId
+   * @param visitor receiving each event
+   * @return the amount of events visited
+   */
+  long forEachEventWithin(Geometry bounds, String filter, EventVisitor visitor);
+
+  /**
+   * Example method of a GIS query. This uses Hibernate spatial extensions, so it does not work with
+   * other JPA implementations.
+   *
+   * @param bounds the geometry
+   * @param filter the <code>LIKE</code> pattern of the userId
+   * @return SpatialEvents inside given geometry and with given filter for the userId
+   */
+  List<SpatialEvent> findAllWithin(Geometry bounds, String filter);
+
+  /**
+   *
+   * @param bounds the geometry
+   * @param filter the <code>LIKE</code> pattern of the userId
+   * @return the amount of SpatialEvents inside given geometry and with given filter for the userId
+   * @see #findSliceWithin(Geometry, String, Sort, int, int)
+   */
+  long countAllWithin(Geometry bounds, String filter);
+
+  /**
+   * A slice of the events within the given geometry and with a userId matching the given filter. Events
+   * are ordered by the given sort followed by id, so slices are stable.
+   *
+   * @param bounds the geometry
+   * @param filter the <code>LIKE</code> pattern of the userId
+   * @param sort the order. Supported properties: userId, timestampCreate, id
+   * @param offset the amount of events to skip
+   * @param limit the maximum amount of events
+   * @return SpatialEvents of the requested slice
+   */
+  List<SpatialEvent> findSliceWithin(Geometry bounds, String filter, Sort sort, int offset, int limit);
+
+  @FunctionalInterface
+  interface EventVisitor {
+
+    /**
+     *
+     * @param userId
+     * @param timestamp
+     * @param location
+     */
+    void visit(String userId, Instant timestamp, Point location);
+  }
+
+  @FunctionalInterface
+  interface LocationVisitor {
+
+    /**
+     *
+     * @param id
+     * @param userId
+     * @param location
+     */
+    void visit(long id, String userId, Point location);
+  }
+
+}
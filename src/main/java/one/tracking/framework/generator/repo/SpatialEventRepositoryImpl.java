@@ -0,0 +1,216 @@
+package one.tracking.framework.generator.repo;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import org.hibernate.jpa.QueryHints;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import one.tracking.framework.generator.entity.SpatialEvent;
+
+public class SpatialEventRepositoryImpl implements SpatialEventRepositoryCustom {
+
+  private static final int FETCH_SIZE = 1000;
+
+  private static final String QUERY_TIMER = "generator.query";
+
+  private static final Set<String> SORT_PROPERTIES = new HashSet<>(Arrays.asList("userId", "timestampCreate", "id"));
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${app.persistence.batch.size:50}")
+  private int batchSize;
+
+  @Override
+  @Transactional
+  public void persistAll(final Collection<SpatialEvent> events) {
+
+    final Timer.Sample sample = Timer.start(this.meterRegistry);
+
+    // 0 disables JDBC batching in Hibernate, then every insert is flushed on its own
+    final int batchSize = Math.max(1, this.batchSize);
+
+    int count = 0;
+    for (final SpatialEvent event : events) {
+
+      this.entityManager.persist(event);
+
+      if (++count % batchSize == 0) {
+        this.entityManager.flush();
+        this.entityManager.clear();
+      }
+    }
+
+    this.entityManager.flush();
+    this.entityManager.clear();
+
+    sample.stop(this.meterRegistry.timer("generator.events.persist"));
+    this.meterRegistry.counter("generator.events.persisted").increment(count);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public long forEachLocation(final Instant from, final Instant to, final int limit, final LocationVisitor visitor) {
+
+    final StringBuilder jpql = new StringBuilder(
+        "SELECT se.id, se.userId, se.location FROM SpatialEvent se WHERE se.location IS NOT NULL");
+    final Map<String, Object> parameters = new HashMap<>();
+
+    if (from != null) {
+      jpql.append(" AND se.timestampCreate >= :from");
+      parameters.put("from", from);
+    }
+    if (to != null) {
+      jpql.append(" AND se.timestampCreate < :to");
+      parameters.put("to", to);
+    }
+    jpql.append(" ORDER BY se.id");
+
+    final TypedQuery<Object[]> query = this.entityManager.createQuery(jpql.toString(), Object[].class);
+    parameters.forEach(query::setParameter);
+    query.setHint(QueryHints.HINT_FETCH_SIZE, FETCH_SIZE);
+    query.setHint(QueryHints.HINT_READONLY, true);
+    if (limit > 0)
+      query.setMaxResults(limit);
+
+    return this.meterRegistry.timer(QUERY_TIMER, "query", "forEachLocation").record(() -> {
+
+      long count = 0;
+      try (final Stream<Object[]> rows = query.getResultStream()) {
+
+        final Iterator<Object[]> iterator = rows.iterator();
+        while (iterator.hasNext()) {
+
+          final Object[] row = iterator.next();
+          visitor.visit(((Number) row[0]).longValue(), (String) row[1], (Point) row[2]);
+          count++;
+        }
+      }
+      return count;
+    });
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public long forEachEvent(final Instant from, final Instant to, final EventVisitor visitor) {
+
+    final StringBuilder jpql = new StringBuilder(
+        "SELECT se.userId, se.timestampCreate, se.location FROM SpatialEvent se WHERE se.location IS NOT NULL");
+    final Map<String, Object> parameters = new HashMap<>();
+
+    if (from != null) {
+      jpql.append(" AND se.timestampCreate >= :from");
+      parameters.put("from", from);
+    }
+    if (to != null) {
+      jpql.append(" AND se.timestampCreate < :to");
+      parameters.put("to", to);
+    }
+
+    return visitEvents(jpql.toString(), parameters, visitor);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public long forEachEventWithin(final Geometry bounds, final String filter, final EventVisitor visitor) {
+
+    final Map<String, Object> parameters = new HashMap<>();
+    parameters.put("bounds", bounds);
+    parameters.put("filter", filter);
+
+    return this.meterRegistry.timer(QUERY_TIMER, "query", "forEachEventWithin").record(
+        () -> visitEvents("SELECT se.userId, se.timestampCreate, se.location FROM SpatialEvent se"
+            + " WHERE within(se.location, :bounds) = true AND se.userId LIKE :filter", parameters, visitor));
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public List<SpatialEvent> findAllWithin(final Geometry bounds, final String filter) {
+
+    final TypedQuery<SpatialEvent> query = this.entityManager.createQuery("SELECT se FROM SpatialEvent se"
+        + " WHERE within(se.location, :bounds) = true AND se.userId LIKE :filter", SpatialEvent.class)
+        .setParameter("bounds", bounds)
+        .setParameter("filter", filter);
+
+    return this.meterRegistry.timer(QUERY_TIMER, "query", "findAllWithin").record(query::getResultList);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public long countAllWithin(final Geometry bounds, final String filter) {
+
+    final TypedQuery<Long> query = this.entityManager.createQuery("SELECT COUNT(se) FROM SpatialEvent se"
+        + " WHERE within(se.location, :bounds) = true AND se.userId LIKE :filter", Long.class)
+        .setParameter("bounds", bounds)
+        .setParameter("filter", filter);
+
+    return this.meterRegistry.timer(QUERY_TIMER, "query", "countAllWithin").record(query::getSingleResult);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public List<SpatialEvent> findSliceWithin(final Geometry bounds, final String filter, final Sort sort,
+      final int offset, final int limit) {
+
+    final StringBuilder jpql = new StringBuilder("SELECT se FROM SpatialEvent se"
+        + " WHERE within(se.location, :bounds) = true AND se.userId LIKE :filter ORDER BY ");
+
+    for (final Sort.Order order : sort) {
+      if (!SORT_PROPERTIES.contains(order.getProperty()))
+        throw new IllegalArgumentException("Unsupported sort property: " + order.getProperty());
+      jpql.append("se.").append(order.getProperty()).append(order.isAscending() ? " ASC, " : " DESC, ");
+    }
+    jpql.append("se.id");
+
+    final TypedQuery<SpatialEvent> query = this.entityManager.createQuery(jpql.toString(), SpatialEvent.class)
+        .setParameter("bounds", bounds)
+        .setParameter("filter", filter)
+        .setHint(QueryHints.HINT_READONLY, true)
+        .setFirstResult(offset)
+        .setMaxResults(limit);
+
+    return this.meterRegistry.timer(QUERY_TIMER, "query", "findSliceWithin").record(query::getResultList);
+  }
+
+  private long visitEvents(final String jpql, final Map<String, Object> parameters, final EventVisitor visitor) {
+
+    final TypedQuery<Object[]> query = this.entityManager.createQuery(jpql, Object[].class);
+    parameters.forEach(query::setParameter);
+    query.setHint(QueryHints.HINT_FETCH_SIZE, FETCH_SIZE);
+    query.setHint(QueryHints.HINT_READONLY, true);
+
+    long count = 0;
+    try (final Stream<Object[]> rows = query.getResultStream()) {
+
+      final Iterator<Object[]> iterator = rows.iterator();
+      while (iterator.hasNext()) {
+
+        final Object[] row = iterator.next();
+        visitor.visit((String) row[0], (Instant) row[1], (Point) row[2]);
+        count++;
+      }
+    }
+    return count;
+  }
+
+}
@@ -0,0 +1,29 @@
+package one.tracking.framework.generator.repo;
+
+import java.time.Instant;
+import org.locationtech.jts.geom.Point;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The values of a {@link one.tracking.framework.generator.entity.SpatialEvent} read as a projection. In
+ * contrast to the entity, instances are not managed by the persistence context, so they can be read in
+ * bulk within a single EntityManager without piling up in memory.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TrackPoint {
+
+  private long id;
+
+  private String userId;
+
+  private Instant timestampCreate;
+
+  private int timestampOffset;
+
+  private Point location;
+
+}
@@ -0,0 +1,439 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.routing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import one.tracking.framework.generator.util.GeoDistance;
+
+/**
+ * Builds a {@link RoadGraph} file of all ways walkable by pedestrians from an OpenStreetMap XML extract.
+ * The extract is streamed, only the coordinates of the nodes and the edges of walkable ways are kept in
+ * primitive arrays.
+ */
+public class OsmGraphBuilder {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OsmGraphBuilder.class);
+
+  /*
+   * Values of the highway tag not walkable by pedestrians
+   */
+  private static final Set<String> EXCLUDED_HIGHWAYS = new HashSet<>(Arrays.asList("motorway", "motorway_link",
+      "trunk", "trunk_link", "construction", "proposed", "abandoned", "raceway", "bus_guideway", "escape"));
+
+  /*
+   * Average amount of nodes per cell of the grid used to look up the nearest node
+   */
+  private static final int NODES_PER_CELL = 4;
+
+  private final LongIntMap nodeIds = new LongIntMap();
+  private int[] nodeLats = new int[1024];
+  private int[] nodeLngs = new int[1024];
+  private int nodeCount = 0;
+
+  private int[] edgeSources = new int[1024];
+  private int[] edgeTargets = new int[1024];
+  private int edgeCount = 0;
+
+  /**
+   * Reads the given extract and writes the graph to the given file.
+   *
+   * @param osmFile the OpenStreetMap XML extract. Nodes must precede the ways referencing them, as in
+   *        extracts exported by the OpenStreetMap API or osmosis.
+   * @param graphFile the target file
+   * @throws IOException
+   */
+  public void build(final Path osmFile, final Path graphFile) throws IOException {
+
+    try (final InputStream in = new BufferedInputStream(Files.newInputStream(osmFile))) {
+      read(in);
+    } catch (final XMLStreamException e) {
+      throw new IOException("Invalid OpenStreetMap extract: " + osmFile, e);
+    }
+
+    LOG.info("Read {} nodes and {} walkable edges from: {}", this.nodeCount, this.edgeCount, osmFile);
+
+    final Path tempFile = graphFile.resolveSibling(graphFile.getFileName() + ".tmp");
+    try {
+      write(tempFile);
+      try {
+        Files.move(tempFile, graphFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (final AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, graphFile, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+
+    LOG.info("Wrote road graph to: {}", graphFile);
+  }
+
+  private void read(final InputStream in) throws XMLStreamException {
+
+    final XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+    final XMLStreamReader reader = factory.createXMLStreamReader(in);
+    try {
+
+      long[] wayNodes = new long[64];
+      int wayNodeCount = 0;
+      boolean inWay = false;
+      String highway = null;
+      String foot = null;
+      String access = null;
+
+      while (reader.hasNext()) {
+
+        final int event = reader.next();
+
+        if (event == XMLStreamConstants.START_ELEMENT) {
+
+          switch (reader.getLocalName()) {
+            case "node":
+              addNode(Long.parseLong(reader.getAttributeValue(null, "id")),
+                  Double.parseDouble(reader.getAttributeValue(null, "lat")),
+                  Double.parseDouble(reader.getAttributeValue(null, "lon")));
+              break;
+            case "way":
+              inWay = true;
+              wayNodeCount = 0;
+              highway = null;
+              foot = null;
+              access = null;
+              break;
+            case "nd":
+              if (inWay) {
+                if (wayNodeCount == wayNodes.length)
+                  wayNodes = Arrays.copyOf(wayNodes, wayNodeCount * 2);
+                wayNodes[wayNodeCount++] = Long.parseLong(reader.getAttributeValue(null, "ref"));
+              }
+              break;
+            case "tag":
+              if (inWay) {
+                final String key = reader.getAttributeValue(null, "k");
+                if ("highway".equals(key))
+                  highway = reader.getAttributeValue(null, "v");
+                else if ("foot".equals(key))
+                  foot = reader.getAttributeValue(null, "v");
+                else if ("access".equals(key))
+                  access = reader.getAttributeValue(null, "v");
+              }
+              break;
+            default:
+              break;
+          }
+
+        } else if (event == XMLStreamConstants.END_ELEMENT && "way".equals(reader.getLocalName())) {
+
+          if (isWalkable(highway, foot, access))
+            addWay(wayNodes, wayNodeCount);
+          inWay = false;
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static boolean isWalkable(final String highway, final String foot, final String access) {
+    if (highway == null || EXCLUDED_HIGHWAYS.contains(highway))
+      return false;
+    if (foot != null)
+      return !"no".equals(foot);
+    return access == null || !("no".equals(access) || "private".equals(access));
+  }
+
+  private void addNode(final long id, final double lat, final double lng) {
+    if (this.nodeCount == this.nodeLats.length) {
+      this.nodeLats = Arrays.copyOf(this.nodeLats, this.nodeCount * 2);
+      this.nodeLngs = Arrays.copyOf(this.nodeLngs, this.nodeCount * 2);
+    }
+    this.nodeLats[this.nodeCount] = (int) Math.round(lat * RoadGraph.MULTIPLIER);
+    this.nodeLngs[this.nodeCount] = (int) Math.round(lng * RoadGraph.MULTIPLIER);
+    this.nodeIds.put(id, this.nodeCount++);
+  }
+
+  private void addWay(final long[] wayNodes, final int length) {
+
+    int previous = -1;
+    for (int i = 0; i < length; i++) {
+
+      // Nodes outside of the extract are skipped
+      final int node = this.nodeIds.get(wayNodes[i]);
+      if (node < 0)
+        continue;
+
+      if (previous >= 0 && previous != node) {
+        if (this.edgeCount == this.edgeSources.length) {
+          this.edgeSources = Arrays.copyOf(this.edgeSources, this.edgeCount * 2);
+          this.edgeTargets = Arrays.copyOf(this.edgeTargets, this.edgeCount * 2);
+        }
+        this.edgeSources[this.edgeCount] = previous;
+        this.edgeTargets[this.edgeCount] = node;
+        this.edgeCount++;
+      }
+      previous = node;
+    }
+  }
+
+  private void write(final Path file) throws IOException {
+
+    // Keep the nodes of the largest connected component only
+    final int[] components = findComponents();
+    final int[] componentSizes = new int[this.nodeCount];
+    int largest = -1;
+    for (int node = 0; node < this.nodeCount; node++) {
+      if (components[node] < 0)
+        continue;
+      final int size = ++componentSizes[components[node]];
+      if (largest < 0 || size > componentSizes[largest])
+        largest = components[node];
+    }
+
+    final int[] newIndices = new int[this.nodeCount];
+    int nodes = 0;
+    for (int node = 0; node < this.nodeCount; node++) {
+      newIndices[node] = largest >= 0 && components[node] == largest ? nodes++ : -1;
+    }
+
+    final int[] lats = new int[nodes];
+    final int[] lngs = new int[nodes];
+    for (int node = 0; node < this.nodeCount; node++) {
+      if (newIndices[node] >= 0) {
+        lats[newIndices[node]] = this.nodeLats[node];
+        lngs[newIndices[node]] = this.nodeLngs[node];
+      }
+    }
+
+    // Both directions of each edge
+    final int[] offsets = new int[nodes + 1];
+    for (int edge = 0; edge < this.edgeCount; edge++) {
+      final int source = newIndices[this.edgeSources[edge]];
+      if (source >= 0) {
+        offsets[source + 1]++;
+        offsets[newIndices[this.edgeTargets[edge]] + 1]++;
+      }
+    }
+    for (int node = 0; node < nodes; node++) {
+      offsets[node + 1] += offsets[node];
+    }
+
+    final int edges = offsets[nodes];
+    final int[] targets = new int[edges];
+    final float[] lengths = new float[edges];
+    final int[] next = Arrays.copyOf(offsets, nodes);
+    for (int edge = 0; edge < this.edgeCount; edge++) {
+      final int source = newIndices[this.edgeSources[edge]];
+      if (source < 0)
+        continue;
+      final int target = newIndices[this.edgeTargets[edge]];
+      final float length = (float) GeoDistance.haversine(
+          lats[source] / RoadGraph.MULTIPLIER, lngs[source] / RoadGraph.MULTIPLIER,
+          lats[target] / RoadGraph.MULTIPLIER, lngs[target] / RoadGraph.MULTIPLIER);
+      targets[next[source]] = target;
+      lengths[next[source]++] = length;
+      targets[next[target]] = source;
+      lengths[next[target]++] = length;
+    }
+
+    // Grid of about NODES_PER_CELL nodes per cell over the bounding box of all nodes
+    int minLat = Integer.MAX_VALUE;
+    int minLng = Integer.MAX_VALUE;
+    int maxLat = Integer.MIN_VALUE;
+    int maxLng = Integer.MIN_VALUE;
+    for (int node = 0; node < nodes; node++) {
+      minLat = Math.min(minLat, lats[node]);
+      maxLat = Math.max(maxLat, lats[node]);
+      minLng = Math.min(minLng, lngs[node]);
+      maxLng = Math.max(maxLng, lngs[node]);
+    }
+    if (nodes == 0) {
+      minLat = minLng = maxLat = maxLng = 0;
+    }
+
+    final long latSpan = (long) maxLat - minLat + 1;
+    final long lngSpan = (long) maxLng - minLng + 1;
+    long cellSize = (long) Math.max(1,
+        Math.ceil(Math.sqrt((double) latSpan * lngSpan * NODES_PER_CELL / Math.max(1, nodes))));
+    while ((lngSpan / cellSize + 1) * (latSpan / cellSize + 1) > nodes + 1L)
+      cellSize *= 2;
+    final int columns = (int) ((lngSpan - 1) / cellSize + 1);
+    final int rows = (int) ((latSpan - 1) / cellSize + 1);
+
+    final int[] cellOffsets = new int[columns * rows + 1];
+    final int[] cells = new int[nodes];
+    for (int node = 0; node < nodes; node++) {
+      cells[node] = (int) (((long) lats[node] - minLat) / cellSize * columns + ((long) lngs[node] - minLng) / cellSize);
+      cellOffsets[cells[node] + 1]++;
+    }
+    for (int cell = 0; cell < columns * rows; cell++) {
+      cellOffsets[cell + 1] += cellOffsets[cell];
+    }
+    final int[] cellNodes = new int[nodes];
+    final int[] nextCellNode = Arrays.copyOf(cellOffsets, columns * rows);
+    for (int node = 0; node < nodes; node++) {
+      cellNodes[nextCellNode[cells[node]]++] = node;
+    }
+
+    if (RoadGraph.HEADER_SIZE + 4L * (4L * nodes + 2L * edges + (long) columns * rows + 2) > Integer.MAX_VALUE)
+      throw new IOException("Road graph too large: " + nodes + " nodes, " + edges + " edges");
+
+    try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+
+      out.writeInt(RoadGraph.MAGIC);
+      out.writeByte(RoadGraph.VERSION);
+      out.writeByte(RoadGraph.PRECISION);
+      out.writeInt(nodes);
+      out.writeInt(edges);
+      out.writeInt(columns);
+      out.writeInt(rows);
+      out.writeInt(minLat);
+      out.writeInt(minLng);
+      out.writeInt((int) Math.min(Integer.MAX_VALUE, cellSize));
+
+      writeInts(out, lats, nodes);
+      writeInts(out, lngs, nodes);
+      writeInts(out, offsets, nodes + 1);
+      writeInts(out, targets, edges);
+      for (int i = 0; i < edges; i++) {
+        out.writeFloat(lengths[i]);
+      }
+      writeInts(out, cellOffsets, columns * rows + 1);
+      writeInts(out, cellNodes, nodes);
+    }
+
+    LOG.info("Keeping {} nodes and {} edges of the largest connected component", nodes, edges / 2);
+  }
+
+  private static void writeInts(final DataOutputStream out, final int[] values, final int length)
+      throws IOException {
+    for (int i = 0; i < length; i++) {
+      out.writeInt(values[i]);
+    }
+  }
+
+  /*
+   * Labels the nodes connected by edges with the root of their component using union find. Nodes
+   * without edges are labeled with -1.
+   */
+  private int[] findComponents() {
+
+    final int[] parents = new int[this.nodeCount];
+    Arrays.fill(parents, -1);
+
+    for (int edge = 0; edge < this.edgeCount; edge++) {
+      final int source = this.edgeSources[edge];
+      final int target = this.edgeTargets[edge];
+      if (parents[source] < 0)
+        parents[source] = source;
+      if (parents[target] < 0)
+        parents[target] = target;
+
+      final int rootA = findRoot(parents, source);
+      final int rootB = findRoot(parents, target);
+      if (rootA != rootB)
+        parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+    }
+
+    final int[] components = new int[this.nodeCount];
+    for (int node = 0; node < this.nodeCount; node++) {
+      components[node] = parents[node] < 0 ? -1 : findRoot(parents, node);
+    }
+    return components;
+  }
+
+  private static int findRoot(final int[] parents, final int node) {
+    int root = node;
+    while (parents[root] != root) {
+      // Path halving
+      parents[root] = parents[parents[root]];
+      root = parents[root];
+    }
+    return root;
+  }
+
+  /*
+   * Open addressing hash map of OpenStreetMap ids to node indices.
+   */
+  private static class LongIntMap {
+
+    private long[] keys = new long[1024];
+    private int[] values = new int[1024];
+    private int size = 0;
+
+    private LongIntMap() {
+      Arrays.fill(this.values, -1);
+    }
+
+    private void put(final long key, final int value) {
+      if (2 * (this.size + 1) > this.keys.length)
+        resize();
+      if (insert(this.keys, this.values, key, value))
+        this.size++;
+    }
+
+    /*
+     * Returns -1 if the key is not contained.
+     */
+    private int get(final long key) {
+      final int mask = this.keys.length - 1;
+      for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+        if (this.values[slot] < 0)
+          return -1;
+        if (this.keys[slot] == key)
+          return this.values[slot];
+      }
+    }
+
+    private void resize() {
+      final long[] keys = new long[this.keys.length * 2];
+      final int[] values = new int[this.values.length * 2];
+      Arrays.fill(values, -1);
+      for (int slot = 0; slot < this.keys.length; slot++) {
+        if (this.values[slot] >= 0)
+          insert(keys, values, this.keys[slot], this.values[slot]);
+      }
+      this.keys = keys;
+      this.values = values;
+    }
+
+    private static boolean insert(final long[] keys, final int[] values, final long key, final int value) {
+      final int mask = keys.length - 1;
+      for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+        if (values[slot] < 0) {
+          keys[slot] = key;
+          values[slot] = value;
+          return true;
+        }
+        if (keys[slot] == key) {
+          values[slot] = value;
+          return false;
+        }
+      }
+    }
+
+    private static int hash(final long key) {
+      final long mixed = key * 0x9E3779B97F4A7C15L;
+      return (int) (mixed ^ (mixed >>> 32));
+    }
+  }
+}
@@ -0,0 +1,362 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.routing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import one.tracking.framework.generator.util.GeoDistance;
+import one.tracking.framework.generator.util.PolylineEncoderDecoder.CoordinateBuffer;
+
+/**
+ * Undirected graph of walkable ways in compressed sparse row layout, read directly from a memory mapped
+ * file written by {@link OsmGraphBuilder}. Shortest paths are calculated using A* with the great circle
+ * distance as heuristic.
+ * <p>
+ * Layout of a graph file, all values big endian:
+ *
+ * <pre>
+ * header:  int magic, byte version, byte precision, int nodeCount, int edgeCount,
+ *          int gridColumns, int gridRows, int gridMinLat, int gridMinLng, int gridCellSize
+ * nodes:   nodeCount * int fixed point latitude, nodeCount * int fixed point longitude
+ * edges:   (nodeCount + 1) * int offset, edgeCount * int target, edgeCount * float length in meters
+ * grid:    (gridColumns * gridRows + 1) * int offset, nodeCount * int node
+ * </pre>
+ *
+ * The edges of node <code>i</code> are stored at <code>offset[i]</code> until <code>offset[i + 1]</code>.
+ * The grid assigns every node to a cell of <code>gridCellSize</code> fixed point degrees for looking up
+ * the nearest node of a position. Only the largest connected component is stored, so there is a path
+ * between any two nodes.
+ * <p>
+ * Thread safe.
+ */
+public class RoadGraph {
+
+  static final int MAGIC = 0x47505347; // "GPSG"
+
+  static final byte VERSION = 1;
+
+  /**
+   * Decimal digits kept of each ordinate. 7 digits are about 1 cm at the equator.
+   */
+  static final byte PRECISION = 7;
+
+  static final double MULTIPLIER = 1e7;
+
+  static final int HEADER_SIZE = 4 + 1 + 1 + 4 * 7;
+
+  private final int nodeCount;
+
+  private final IntBuffer lats;
+  private final IntBuffer lngs;
+  private final IntBuffer offsets;
+  private final IntBuffer targets;
+  private final FloatBuffer lengths;
+
+  private final int gridColumns;
+  private final int gridRows;
+  private final int gridMinLat;
+  private final int gridMinLng;
+  private final int gridCellSize;
+  private final IntBuffer cellOffsets;
+  private final IntBuffer cellNodes;
+
+  private final ThreadLocal<Search> searches;
+
+  private RoadGraph(final ByteBuffer buffer) throws IOException {
+
+    if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC)
+      throw new IOException("Invalid road graph");
+    if (buffer.get() != VERSION || buffer.get() != PRECISION)
+      throw new IOException("Unsupported road graph version");
+
+    this.nodeCount = buffer.getInt();
+    final int edgeCount = buffer.getInt();
+    this.gridColumns = buffer.getInt();
+    this.gridRows = buffer.getInt();
+    this.gridMinLat = buffer.getInt();
+    this.gridMinLng = buffer.getInt();
+    this.gridCellSize = buffer.getInt();
+
+    final long cells = (long) this.gridColumns * this.gridRows;
+    final long expected = HEADER_SIZE + 4L * (4L * this.nodeCount + 2L * edgeCount + cells + 2);
+    if (this.nodeCount < 0 || edgeCount < 0 || cells < 1 || this.gridCellSize <= 0
+        || buffer.capacity() != expected)
+      throw new IOException("Invalid road graph");
+
+    this.lats = slice(buffer, this.nodeCount).asIntBuffer();
+    this.lngs = slice(buffer, this.nodeCount).asIntBuffer();
+    this.offsets = slice(buffer, this.nodeCount + 1).asIntBuffer();
+    this.targets = slice(buffer, edgeCount).asIntBuffer();
+    this.lengths = slice(buffer, edgeCount).asFloatBuffer();
+    this.cellOffsets = slice(buffer, (int) cells + 1).asIntBuffer();
+    this.cellNodes = slice(buffer, this.nodeCount).asIntBuffer();
+
+    this.searches = ThreadLocal.withInitial(() -> new Search(this.nodeCount));
+  }
+
+  /**
+   * Maps the given graph file into memory. The file must not be modified while the graph is in use.
+   *
+   * @param file
+   * @return
+   * @throws IOException
+   */
+  public static RoadGraph load(final Path file) throws IOException {
+
+    try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+      if (channel.size() > Integer.MAX_VALUE)
+        throw new IOException("Road graph too large: " + file);
+
+      return new RoadGraph(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  public int getNodeCount() {
+    return this.nodeCount;
+  }
+
+  /**
+   * Calculates the shortest walkable path between the nodes nearest to the given positions.
+   *
+   * @param startLat
+   * @param startLng
+   * @param endLat
+   * @param endLng
+   * @return the positions of the path starting and ending at the given positions or null if the graph
+   *         is empty
+   */
+  public CoordinateBuffer route(final double startLat, final double startLng, final double endLat,
+      final double endLng) {
+
+    final int source = findNearestNode(startLat, startLng);
+    final int target = findNearestNode(endLat, endLng);
+    if (source < 0 || target < 0)
+      return null;
+
+    final Search search = this.searches.get();
+    search.start(source, estimate(source, target));
+
+    while (!search.isEmpty()) {
+
+      final int node = search.poll();
+      if (node == target)
+        break;
+
+      final double distance = search.getDistance(node);
+      for (int edge = this.offsets.get(node); edge < this.offsets.get(node + 1); edge++) {
+        final int next = this.targets.get(edge);
+        final double nextDistance = distance + this.lengths.get(edge);
+        if (search.improves(next, nextDistance))
+          search.update(next, node, nextDistance, nextDistance + estimate(next, target));
+      }
+    }
+
+    // All nodes are connected, so the target has been reached
+    final CoordinateBuffer path = new CoordinateBuffer();
+    path.add(startLat, startLng, 0);
+    for (final int node : search.getPath(target)) {
+      path.add(getLat(node), getLng(node), 0);
+    }
+    path.add(endLat, endLng, 0);
+    return path;
+  }
+
+  /**
+   *
+   * @param lat
+   * @param lng
+   * @return the index of the node nearest to the given position or -1 if the graph is empty
+   */
+  public int findNearestNode(final double lat, final double lng) {
+
+    if (this.nodeCount == 0)
+      return -1;
+
+    final double cos = Math.cos(Math.toRadians(lat));
+    final double cellSize = this.gridCellSize / MULTIPLIER;
+    final int column = toCell((lng * MULTIPLIER - this.gridMinLng) / this.gridCellSize, this.gridColumns);
+    final int row = toCell((lat * MULTIPLIER - this.gridMinLat) / this.gridCellSize, this.gridRows);
+
+    int nearest = -1;
+    double nearestDistance = Double.MAX_VALUE;
+
+    // Search rings of cells around the cell of the position until no closer node can be found
+    final int maxRadius = Math.max(this.gridColumns, this.gridRows);
+    for (int radius = 0; radius <= maxRadius; radius++) {
+
+      final double minDistance = (radius - 1) * cellSize * Math.min(1, cos);
+      if (nearest >= 0 && minDistance * minDistance > nearestDistance)
+        break;
+
+      for (int r = row - radius; r <= row + radius; r++) {
+        if (r < 0 || r >= this.gridRows)
+          continue;
+
+        final boolean edgeRow = r == row - radius || r == row + radius;
+        for (int c = column - radius; c <= column + radius; c += edgeRow ? 1 : 2 * Math.max(1, radius)) {
+          if (c < 0 || c >= this.gridColumns)
+            continue;
+
+          final int cell = r * this.gridColumns + c;
+          for (int i = this.cellOffsets.get(cell); i < this.cellOffsets.get(cell + 1); i++) {
+            final int node = this.cellNodes.get(i);
+            final double dLat = getLat(node) - lat;
+            final double dLng = (getLng(node) - lng) * cos;
+            final double distance = dLat * dLat + dLng * dLng;
+            if (distance < nearestDistance) {
+              nearestDistance = distance;
+              nearest = node;
+            }
+          }
+        }
+      }
+    }
+    return nearest;
+  }
+
+  public double getLat(final int node) {
+    return this.lats.get(node) / MULTIPLIER;
+  }
+
+  public double getLng(final int node) {
+    return this.lngs.get(node) / MULTIPLIER;
+  }
+
+  private double estimate(final int node, final int target) {
+    return GeoDistance.haversine(getLat(node), getLng(node), getLat(target), getLng(target));
+  }
+
+  private static int toCell(final double value, final int cells) {
+    return (int) Math.max(0, Math.min(cells - 1, Math.floor(value)));
+  }
+
+  private static ByteBuffer slice(final ByteBuffer buffer, final int values) {
+    final ByteBuffer slice = buffer.slice();
+    slice.limit(4 * values);
+    buffer.position(buffer.position() + 4 * values);
+    return slice;
+  }
+
+  /*
+   * State of a search reused by all searches of a thread. Entries of previous searches are detected by
+   * their generation, so the arrays never need to be cleared.
+   */
+  private static class Search {
+
+    private final int[] generations;
+    private final double[] distances;
+    private final int[] parents;
+    private final boolean[] settled;
+
+    private int generation = 0;
+
+    /* Binary min heap of nodes by their estimated total distance, outdated entries are skipped */
+    private int[] heapNodes = new int[64];
+    private double[] heapKeys = new double[64];
+    private int heapSize = 0;
+
+    private Search(final int nodeCount) {
+      this.generations = new int[nodeCount];
+      this.distances = new double[nodeCount];
+      this.parents = new int[nodeCount];
+      this.settled = new boolean[nodeCount];
+    }
+
+    private void start(final int source, final double estimate) {
+      if (++this.generation == Integer.MAX_VALUE) {
+        Arrays.fill(this.generations, 0);
+        this.generation = 1;
+      }
+      this.heapSize = 0;
+      update(source, -1, 0, estimate);
+    }
+
+    private boolean isEmpty() {
+      while (this.heapSize > 0 && this.settled[this.heapNodes[0]])
+        remove();
+      return this.heapSize == 0;
+    }
+
+    private int poll() {
+      final int node = this.heapNodes[0];
+      remove();
+      this.settled[node] = true;
+      return node;
+    }
+
+    private double getDistance(final int node) {
+      return this.distances[node];
+    }
+
+    private boolean improves(final int node, final double distance) {
+      return this.generations[node] != this.generation
+          || (!this.settled[node] && distance < this.distances[node]);
+    }
+
+    private void update(final int node, final int parent, final double distance, final double estimate) {
+      this.generations[node] = this.generation;
+      this.settled[node] = false;
+      this.distances[node] = distance;
+      this.parents[node] = parent;
+      push(node, estimate);
+    }
+
+    private int[] getPath(final int target) {
+      int length = 0;
+      for (int node = target; node >= 0; node = this.parents[node]) {
+        length++;
+      }
+      final int[] path = new int[length];
+      for (int node = target; node >= 0; node = this.parents[node]) {
+        path[--length] = node;
+      }
+      return path;
+    }
+
+    private void push(final int node, final double key) {
+      if (this.heapSize == this.heapNodes.length) {
+        this.heapNodes = Arrays.copyOf(this.heapNodes, this.heapSize * 2);
+        this.heapKeys = Arrays.copyOf(this.heapKeys, this.heapSize * 2);
+      }
+      int index = this.heapSize++;
+      while (index > 0) {
+        final int parent = (index - 1) / 2;
+        if (this.heapKeys[parent] <= key)
+          break;
+        this.heapNodes[index] = this.heapNodes[parent];
+        this.heapKeys[index] = this.heapKeys[parent];
+        index = parent;
+      }
+      this.heapNodes[index] = node;
+      this.heapKeys[index] = key;
+    }
+
+    private void remove() {
+      final int node = this.heapNodes[--this.heapSize];
+      final double key = this.heapKeys[this.heapSize];
+      int index = 0;
+      while (true) {
+        int child = 2 * index + 1;
+        if (child >= this.heapSize)
+          break;
+        if (child + 1 < this.heapSize && this.heapKeys[child + 1] < this.heapKeys[child])
+          child++;
+        if (this.heapKeys[child] >= key)
+          break;
+        this.heapNodes[index] = this.heapNodes[child];
+        this.heapKeys[index] = this.heapKeys[child];
+        index = child;
+      }
+      this.heapNodes[index] = node;
+      this.heapKeys[index] = key;
+    }
+  }
+}
@@ -1,293 +1,518 @@
-/**
- *
- */
-package one.tracking.framework.generator.service;
-
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.LinkOption;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.OffsetDateTime;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.UUID;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
-import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Envelope;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.MultiPoint;
-import org.locationtech.jts.geom.Point;
-import org.locationtech.jts.io.ParseException;
-import org.locationtech.jts.io.WKTReader;
-import org.locationtech.jts.io.WKTWriter;
-import org.locationtech.jts.shape.random.RandomPointsBuilder;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.DisposableBean;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.context.event.ApplicationStartedEvent;
-import org.springframework.context.event.EventListener;
-import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import one.tracking.framework.generator.entity.SpatialEvent;
-import one.tracking.framework.generator.hereapi.Route;
-import one.tracking.framework.generator.hereapi.RouteResult;
-import one.tracking.framework.generator.hereapi.Section;
-import one.tracking.framework.generator.repo.SpatialEventRepository;
-import one.tracking.framework.generator.util.PolylineEncoderDecoder;
-import one.tracking.framework.generator.util.PolylineEncoderDecoder.LatLngZ;
-
-/**
- * @author Marko Voß
- *
- */
-@Service
-public class DataService implements DisposableBean {
-
-  private static final Logger LOG = LoggerFactory.getLogger(DataService.class);
-
-  @Autowired
-  private SpatialEventRepository repository;
-
-  @Autowired
-  private GeometryFactory geometryFactory;
-
-  @Autowired
-  private RestTemplate restTemplate;
-
-  @Autowired
-  private DateTimeFormatter formatter;
-
-  @Autowired
-  private Envelope envelope;
-
-  @Autowired
-  private WKTReader wktReader;
-
-  @Value("${app.apiKey}")
-  private String apiKey;
-
-  @Value("${app.storage.file}")
-  private String dbFile;
-
-  @Value("${app.create.amount.users}")
-  private int amountOfUsers;
-
-  @Value("${app.create.amount.travels}")
-  private int amountOfTravels;
-
-  @EventListener
-  private void handle(final ApplicationStartedEvent event) throws Exception {
-    importData();
-    generateData();
-    LOG.info("Done.");
-  }
-
-  @Override
-  public void destroy() throws Exception {
-    LOG.info("Destroy...");
-    exportData();
-  }
-
-  /**
-   *
-   * @param amount
-   * @return
-   */
-  private List<UUID> createUserIds(final int amount) {
-    final List<UUID> uuids = new ArrayList<>();
-    for (int i = 0; i < amount; i++) {
-      uuids.add(UUID.randomUUID());
-    }
-    return uuids;
-  }
-
-  /**
-   * @throws ParseException
-   *
-   */
-  private void generateData() throws ParseException {
-    LOG.info("Generating data...");
-
-    final List<UUID> users = createUserIds(this.amountOfUsers);
-
-    /*
-     * TODO use application parameter for start time
-     */
-    final OffsetDateTime startTime = LocalDateTime.of(2020, 3, 10, 6, 0).atOffset(ZoneOffset.UTC);
-
-    for (final UUID uuid : users) {
-
-      final RandomPointsBuilder builder = new RandomPointsBuilder(this.geometryFactory);
-      builder.setExtent(this.envelope); // Limit generated point to the envelope
-      builder.setNumPoints(this.amountOfTravels + 1); // Generate travels within this envelope
-
-      final MultiPoint multiPoint = (MultiPoint) builder.getGeometry();
-
-      Coordinate previous = null;
-      for (final Coordinate coord : multiPoint.getCoordinates()) {
-
-        if (previous == null) {
-          previous = coord;
-          continue;
-        }
-
-        performRouteRequest(uuid, startTime, previous, coord);
-        previous = coord;
-      }
-    }
-
-  }
-
-  /**
-   *
-   * @param userId
-   * @param startTime
-   * @param start
-   * @param end
-   */
-  private void performRouteRequest(final UUID userId, final OffsetDateTime startTime, final Coordinate start,
-      final Coordinate end) {
-
-    System.out.println(this.formatter.format(startTime));
-
-    final RouteResult result = this.restTemplate.getForObject(
-        "https://router.hereapi.com/v8/routes?transportMode={mode}&origin={latA},{lonA}&destination={latB},{lonB}&return={return}&apiKey={apiKey}",
-        RouteResult.class,
-        "pedestrian",
-        start.x,
-        start.y,
-        end.x,
-        end.y,
-        "polyline",
-        this.apiKey);
-
-    final List<LatLngZ> positions = getPositions(result);
-
-    /*
-     * TODO: use application parameter for time increase.
-     *
-     * Currently we visit each position after 5 minutes. (no real time calculation done)
-     */
-    int minutesAdd = 0;
-
-    for (final LatLngZ position : positions) {
-
-      final OffsetDateTime current = startTime.plusMinutes(minutesAdd);
-      minutesAdd += 5;
-
-      this.repository.save(SpatialEvent.builder()
-          .userId(userId.toString())
-          .location(this.geometryFactory.createPoint(new Coordinate(position.lng, position.lat)))
-          .timestampCreate(current.toInstant())
-          .timestampOffset(current.getOffset().getTotalSeconds())
-          .build());
-    }
-  }
-
-  /**
-   *
-   * @param result
-   * @return
-   */
-  private List<LatLngZ> getPositions(final RouteResult result) {
-
-    if (result.getRoutes() == null || result.getRoutes().isEmpty())
-      return Collections.emptyList();
-
-    final Route route = result.getRoutes().get(0);
-
-    if (route.getSections() == null || route.getSections().isEmpty())
-      return Collections.emptyList();
-
-    final Section section = route.getSections().get(0);
-
-    return PolylineEncoderDecoder.decode(section.getPolyline());
-  }
-
-  /**
-   *
-   * @throws IOException
-   * @throws ParseException
-   * @throws NumberFormatException
-   */
-  private void importData() throws IOException, NumberFormatException, ParseException {
-
-    final Path path = Paths.get(this.dbFile);
-    if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS))
-      return;
-
-    LOG.info("Importing data from: {} ...", this.dbFile);
-
-    try (final CSVParser parser = new CSVParser(new FileReader(path.toFile()), CSVFormat.EXCEL)) {
-
-      final List<CSVRecord> records = parser.getRecords();
-
-      boolean first = true;
-      for (final CSVRecord record : records) {
-
-        if (first) {
-          first = false;
-          continue;
-        }
-
-        this.repository.save(SpatialEvent.builder()
-            .id(Long.parseLong(record.get(0)))
-            .version(Integer.parseInt(record.get(1)))
-            .userId(record.get(2))
-            .timestampCreate(Instant.parse(record.get(3)))
-            .timestampOffset(Integer.parseInt(record.get(4)))
-            .location((Point) this.wktReader.read(record.get(5)))
-            .build());
-      }
-    }
-
-    LOG.info("Importing done.");
-  }
-
-  private void exportData() throws IOException {
-
-    final List<SpatialEvent> events = this.repository.findAll();
-    if (events.isEmpty())
-      return;
-
-    LOG.info("Exporting data to: {} ...", this.dbFile);
-
-    final Path path = Paths.get(this.dbFile);
-    if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS))
-      Files.createFile(path);
-
-    final WKTWriter pointWriter = new WKTWriter(2);
-
-    try (final CSVPrinter printer = new CSVPrinter(new FileWriter(path.toFile()), CSVFormat.EXCEL)) {
-
-      printer.printRecord("id", "version", "userId", "timestamp", "offset", "point");
-
-      for (final SpatialEvent event : events) {
-
-        printer.printRecord(
-            event.getId(),
-            event.getVersion(),
-            event.getUserId(),
-            event.getTimestampCreate(),
-            event.getTimestampOffset(),
-            pointWriter.write(event.getLocation()));
-      }
-    }
-
-    LOG.info("Exporting done.");
-  }
-
-}
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.io.WKTWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import one.tracking.framework.generator.entity.SpatialEvent;
+import one.tracking.framework.generator.repo.SpatialEventRepository;
+import one.tracking.framework.generator.storage.BinarySnapshotReader;
+import one.tracking.framework.generator.storage.BinarySnapshotWriter;
+import one.tracking.framework.generator.storage.SnapshotFormat;
+import one.tracking.framework.generator.util.PolylineEncoderDecoder.CoordinateBuffer;
+import one.tracking.framework.generator.util.RouteSampler;
+import one.tracking.framework.generator.util.TrajectorySimplifier;
+import one.tracking.framework.generator.util.WktPointParser;
+
+/**
+ * @author Marko Voß
+ *
+ */
+@Service
+@Profile("!benchmark")
+public class DataService implements DisposableBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DataService.class);
+
+  private static final String TRANSPORT_MODE = "pedestrian";
+
+  private static final double MIN_SPEED = 0.01;
+
+  @Autowired
+  private SpatialEventRepository repository;
+
+  @Autowired
+  private GeometryFactory geometryFactory;
+
+  @Autowired
+  private RouteProvider routeProvider;
+
+  @Autowired
+  private PopulationModel populationModel;
+
+  @Autowired
+  private DateTimeFormatter formatter;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${app.storage.file}")
+  private String dbFile;
+
+  @Value("${app.storage.format:CSV}")
+  private SnapshotFormat storageFormat;
+
+  @Value("${app.create.amount.users}")
+  private int amountOfUsers;
+
+  @Value("${app.create.amount.days:1}")
+  private int amountOfDays;
+
+  @Value("${app.create.start.date:2020-03-10}")
+  private String startDate;
+
+  @Value("${app.create.partition.size:1000}")
+  private int partitionSize;
+
+  @Value("${app.create.seed:}")
+  private String seed;
+
+  @Value("${app.create.shard.index:0}")
+  private int shardIndex;
+
+  @Value("${app.create.shard.count:1}")
+  private int shardCount;
+
+  @Value("${app.persistence.chunk.size:10000}")
+  private int chunkSize;
+
+  @Value("${app.route.simplify.tolerance:5}")
+  private double simplifyTolerance;
+
+  @Value("${app.route.speed.mean:1.4}")
+  private double speedMean;
+
+  @Value("${app.route.speed.deviation:0.2}")
+  private double speedDeviation;
+
+  @Value("${app.route.sampling.interval:10}")
+  private double samplingInterval;
+
+  @EventListener
+  private void handle(final ApplicationStartedEvent event) throws Exception {
+    importData();
+    generateData();
+    LOG.info("Done.");
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    LOG.info("Destroy...");
+    exportData();
+  }
+
+  /**
+   * Generates the users of this shard partition by partition. All users of a partition are generated
+   * concurrently, each from its own seed derived from the seed of the run and its index. The users are
+   * split into contiguous ranges of indices, one per shard, so all shards of a run generated with the
+   * same seed together contain exactly the users of a single run.
+   */
+  private void generateData() {
+
+    if (this.shardCount < 1 || this.shardIndex < 0 || this.shardIndex >= this.shardCount)
+      throw new IllegalStateException("Invalid shard " + this.shardIndex + " of " + this.shardCount
+          + ": app.create.shard.index must be between 0 and app.create.shard.count - 1");
+
+    final boolean seeded = this.seed != null && !this.seed.trim().isEmpty();
+    if (!seeded && this.shardCount > 1)
+      throw new IllegalStateException("No seed configured for a sharded run: app.create.seed");
+
+    final long seed = seeded ? Long.parseLong(this.seed.trim()) : ThreadLocalRandom.current().nextLong();
+    final LocalDate startDate = LocalDate.parse(this.startDate);
+    final int partitionSize = Math.max(1, this.partitionSize);
+
+    final int first = (int) ((long) this.amountOfUsers * this.shardIndex / this.shardCount);
+    final int last = (int) ((long) this.amountOfUsers * (this.shardIndex + 1) / this.shardCount);
+
+    LOG.info("Generating data of users {} to {} of {} over {} days using seed {} ...", first, last,
+        this.amountOfUsers, this.amountOfDays, seed);
+
+    for (int partition = first; partition < last; partition += partitionSize) {
+
+      final int end = (int) Math.min(last, (long) partition + partitionSize);
+      final List<CompletableFuture<Void>> users = new ArrayList<>(end - partition);
+
+      for (int user = partition; user < end; user++) {
+        final Random random = new Random(PopulationModel.seedOf(seed, user));
+        users.add(generateUser(createUserId(random), startDate, random));
+      }
+
+      CompletableFuture.allOf(users.toArray(new CompletableFuture<?>[users.size()])).join();
+
+      LOG.info("Generated {} of {} users.", end - first, last - first);
+    }
+  }
+
+  /**
+   *
+   * @param random
+   * @return a random (version 4) UUID drawn from the given random
+   */
+  private static UUID createUserId(final Random random) {
+    final long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+    final long leastSigBits = (random.nextLong() & ~(0xC000000000000000L)) | 0x8000000000000000L;
+    return new UUID(mostSigBits, leastSigBits);
+  }
+
+  /**
+   * Generates the travels of a single user day by day. Each travel starts after the previous one
+   * arrived.
+   *
+   * @param userId
+   * @param startDate
+   * @param random
+   * @return
+   */
+  private CompletableFuture<Void> generateUser(final UUID userId, final LocalDate startDate, final Random random) {
+
+    final Resident resident = this.populationModel.createResident(random);
+
+    CompletableFuture<Void> days = CompletableFuture.completedFuture(null);
+    for (int day = 0; day < this.amountOfDays; day++) {
+      final LocalDate date = startDate.plusDays(day);
+      days = days.thenCompose(previous -> generateDay(userId, resident, date, random));
+    }
+    return days;
+  }
+
+  private CompletableFuture<Void> generateDay(final UUID userId, final Resident resident, final LocalDate date,
+      final Random random) {
+
+    final DayPlan plan = this.populationModel.planDay(resident, date, random);
+
+    CompletableFuture<OffsetDateTime> travels = CompletableFuture.completedFuture(plan.getDeparture());
+    for (int i = 1; i < plan.getStops().size(); i++) {
+
+      final Stop origin = plan.getStops().get(i - 1);
+      final Stop destination = plan.getStops().get(i);
+
+      travels = travels.thenCompose(departure -> performRouteRequest(userId, departure, origin.getLocation(),
+          destination.getLocation(), random).thenApply(arrival -> arrival.plus(destination.getStay())));
+    }
+    return travels.thenApply(departure -> null);
+  }
+
+  /**
+   *
+   * @param userId
+   * @param startTime
+   * @param start
+   * @param end
+   * @param random
+   * @return the time of arrival, which is the start time if the route request failed
+   */
+  private CompletableFuture<OffsetDateTime> performRouteRequest(final UUID userId, final OffsetDateTime startTime,
+      final Coordinate start, final Coordinate end, final Random random) {
+
+    // Drawn before the request, so the following draws do not depend on whether the request succeeds
+    final double speed = nextSpeed(random);
+
+    return this.routeProvider.route(start, end, TRANSPORT_MODE)
+        .thenApply(positions -> storeRoute(userId, startTime, positions, speed))
+        .exceptionally(e -> {
+          LOG.error("Route request for user {} failed: {}", userId, e.getMessage());
+          return startTime;
+        });
+  }
+
+  /**
+   *
+   * @param userId
+   * @param startTime
+   * @param positions
+   * @param speed in meters per second
+   * @return the time of arrival
+   */
+  private OffsetDateTime storeRoute(final UUID userId, final OffsetDateTime startTime,
+      final CoordinateBuffer positions, final double speed) {
+
+    if (positions == null || positions.isEmpty())
+      return startTime;
+
+    LOG.debug("Storing route for user {} starting at {}", userId, this.formatter.format(startTime));
+
+    final double[] lats = new double[positions.size()];
+    final double[] lngs = new double[positions.size()];
+    for (int i = 0; i < positions.size(); i++) {
+      lats[i] = positions.getLat(i);
+      lngs[i] = positions.getLng(i);
+    }
+
+    final int[] kept = TrajectorySimplifier.simplify(lats, lngs, positions.size(), this.simplifyTolerance);
+
+    LOG.debug("Simplified route of user {} from {} to {} positions", userId, positions.size(), kept.length);
+
+    // The kept indices are ascending, so the kept positions can be moved to the front in place
+    for (int i = 0; i < kept.length; i++) {
+      lats[i] = lats[kept[i]];
+      lngs[i] = lngs[kept[i]];
+    }
+
+    final List<SpatialEvent> events = new ArrayList<>();
+
+    final double duration = RouteSampler.sample(lats, lngs, kept.length, speed, this.samplingInterval,
+        (seconds, lat, lng) -> {
+
+          final OffsetDateTime current = startTime.plus(Math.round(seconds * 1000), ChronoUnit.MILLIS);
+
+          events.add(SpatialEvent.builder()
+              .userId(userId.toString())
+              .location(this.geometryFactory.createPoint(new Coordinate(lng, lat)))
+              .timestampCreate(current.toInstant())
+              .timestampOffset(current.getOffset().getTotalSeconds())
+              .build());
+        });
+
+    this.repository.persistAll(events);
+
+    return startTime.plus(Math.round(duration * 1000), ChronoUnit.MILLIS);
+  }
+
+  /**
+   *
+   * @return the speed of a travel in meters per second drawn from a normal distribution. Speeds below a
+   *         tenth of the mean are raised to it.
+   */
+  private double nextSpeed(final Random random) {
+    final double mean = Math.max(MIN_SPEED, this.speedMean);
+    final double speed = mean + this.speedDeviation * random.nextGaussian();
+    return Math.max(mean / 10, speed);
+  }
+
+  /**
+   *
+   * @throws IOException
+   * @throws NumberFormatException
+   */
+  private void importData() throws IOException, NumberFormatException {
+
+    final Path path = Paths.get(this.dbFile);
+    if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS))
+      return;
+
+    LOG.info("Importing {} data from: {} ...", this.storageFormat, this.dbFile);
+
+    final long startNanos = System.nanoTime();
+    final long count;
+    switch (this.storageFormat) {
+      case BINARY:
+        count = new BinarySnapshotReader(this.geometryFactory).read(path, this.repository::persistAll);
+        break;
+      case CSV:
+      default:
+        count = importCsv(path);
+        break;
+    }
+
+    recordStorage("import", count, startNanos);
+
+    LOG.info("Imported {} events.", count);
+  }
+
+  /**
+   *
+   * @param path
+   * @return the amount of imported events
+   * @throws IOException
+   * @throws NumberFormatException
+   */
+  private long importCsv(final Path path) throws IOException, NumberFormatException {
+
+    long count = 0;
+
+    // Records are read one by one from the buffered channel, only the current chunk is kept in memory
+    try (final CSVParser parser = new CSVParser(
+        Files.newBufferedReader(path, StandardCharsets.UTF_8), CSVFormat.EXCEL.withFirstRecordAsHeader())) {
+
+      final List<SpatialEvent> chunk = new ArrayList<>(this.chunkSize);
+
+      for (final CSVRecord record : parser) {
+
+        // The id will be assigned by the sequence on insert
+        chunk.add(SpatialEvent.builder()
+            .version(Integer.parseInt(record.get(1)))
+            .userId(record.get(2))
+            .timestampCreate(Instant.parse(record.get(3)))
+            .timestampOffset(Integer.parseInt(record.get(4)))
+            .location(this.geometryFactory.createPoint(WktPointParser.parse(record.get(5))))
+            .build());
+
+        if (chunk.size() >= this.chunkSize) {
+          this.repository.persistAll(chunk);
+          count += chunk.size();
+          chunk.clear();
+        }
+      }
+
+      if (!chunk.isEmpty()) {
+        this.repository.persistAll(chunk);
+        count += chunk.size();
+      }
+    }
+
+    return count;
+  }
+
+  private void exportData() throws IOException {
+
+    if (this.repository.findPageAfter(0, PageRequest.of(0, 1)).isEmpty())
+      return;
+
+    LOG.info("Exporting {} data to: {} ...", this.storageFormat, this.dbFile);
+
+    final Path path = Paths.get(this.dbFile).toAbsolutePath();
+    final Path tempFile = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+
+    final long startNanos = System.nanoTime();
+    final long count;
+    try {
+      switch (this.storageFormat) {
+        case BINARY:
+          count = exportBinary(tempFile);
+          break;
+        case CSV:
+        default:
+          count = exportCsv(tempFile);
+          break;
+      }
+
+      moveFile(tempFile, path);
+
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+
+    recordStorage("export", count, startNanos);
+
+    LOG.info("Exported {} events.", count);
+  }
+
+  private void recordStorage(final String operation, final long count, final long startNanos) {
+    final Tags tags = Tags.of("operation", operation, "format", this.storageFormat.name());
+    this.meterRegistry.timer("generator.storage", tags).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    this.meterRegistry.counter("generator.storage.events", tags).increment(count);
+  }
+
+  /**
+   *
+   * @param path
+   * @return the amount of exported events
+   * @throws IOException
+   */
+  private long exportCsv(final Path path) throws IOException {
+
+    final WKTWriter pointWriter = new WKTWriter(2);
+
+    long count = 0;
+
+    try (final CSVPrinter printer = new CSVPrinter(
+        Files.newBufferedWriter(path, StandardCharsets.UTF_8), CSVFormat.EXCEL)) {
+
+      printer.printRecord("id", "version", "userId", "timestamp", "offset", "point");
+
+      // Fetch page by page using the last exported id, so only a single page is kept in memory
+      List<SpatialEvent> events = this.repository.findPageAfter(0, PageRequest.of(0, this.chunkSize));
+      while (!events.isEmpty()) {
+
+        for (final SpatialEvent event : events) {
+
+          printer.printRecord(
+              event.getId(),
+              event.getVersion(),
+              event.getUserId(),
+              event.getTimestampCreate(),
+              event.getTimestampOffset(),
+              pointWriter.write(event.getLocation()));
+        }
+
+        count += events.size();
+
+        final long lastId = events.get(events.size() - 1).getId();
+        events = this.repository.findPageAfter(lastId, PageRequest.of(0, this.chunkSize));
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   *
+   * @param path
+   * @return the amount of exported events
+   * @throws IOException
+   */
+  private long exportBinary(final Path path) throws IOException {
+
+    long count = 0;
+
+    try (final BinarySnapshotWriter writer = new BinarySnapshotWriter(path, this.chunkSize)) {
+
+      // Fetch page by page ordered by user and time, so each user's track ends up in consecutive blocks
+      List<SpatialEvent> events = this.repository.findFirstPageOrderedByUser(PageRequest.of(0, this.chunkSize));
+      while (!events.isEmpty()) {
+
+        for (final SpatialEvent event : events) {
+          writer.write(event);
+        }
+
+        count += events.size();
+
+        final SpatialEvent last = events.get(events.size() - 1);
+        events = this.repository.findPageOrderedByUserAfter(last.getUserId(), last.getTimestampCreate(),
+            last.getId(), PageRequest.of(0, this.chunkSize));
+      }
+    }
+
+    return count;
+  }
+
+  /*
+   * Replaces the target with the source file atomically if supported by the file system.
+   */
+  private void moveFile(final Path source, final Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (final AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+}
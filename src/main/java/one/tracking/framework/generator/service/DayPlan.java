@@ -0,0 +1,32 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The travels of a generated user on a single day.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class DayPlan {
+
+  /**
+   * The time of leaving the first stop.
+   */
+  private OffsetDateTime departure;
+
+  /**
+   * The places visited in this order, starting and usually ending at home.
+   */
+  private List<Stop> stops;
+
+}
@@ -0,0 +1,43 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Optional restrictions of the pairs of events considered by {@link DistanceService#load}. Apart from the
+ * maximum distance, unset values do not restrict the result.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class DistanceFilter {
+
+  /**
+   * At least one event of a pair must belong to this user.
+   */
+  private String userId;
+
+  /**
+   * Both events of a pair must have been created at or after this instant.
+   */
+  private Instant from;
+
+  /**
+   * Both events of a pair must have been created before this instant.
+   */
+  private Instant to;
+
+  /**
+   * The maximum distance between both events of a pair in the units of the coordinates. Required, so
+   * each event only has to be compared to the events of its adjacent grid cells instead of all events.
+   */
+  private Double maxDistance;
+
+}
@@ -0,0 +1,183 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The pairs of events within a maximum distance of each other.
+ * <p>
+ * Events are put into a grid of cells spanning at least the maximum distance in both directions. Close
+ * events can only be located in the same or adjacent cells, so every event is compared to the events
+ * of at most 9 cells instead of all events.
+ */
+public class DistancePairs {
+
+  /*
+   * Keeps the cell coordinates within int range for a maximum distance of 0
+   */
+  private static final double MIN_CELL_SIZE = 1e-6;
+
+  private final double maxDistance;
+  private final double cellSize;
+
+  private final Map<Long, Cell> cells = new HashMap<>();
+
+  private long[] ids = new long[1024];
+  private double[] xs = new double[1024];
+  private double[] ys = new double[1024];
+  private boolean[] selected = new boolean[1024];
+  private int size = 0;
+
+  DistancePairs(final double maxDistance) {
+    this.maxDistance = maxDistance;
+    this.cellSize = Math.max(MIN_CELL_SIZE, maxDistance);
+  }
+
+  /**
+   *
+   * @param id the id of the event. Must be higher than the id of the previously added event.
+   * @param x
+   * @param y
+   * @param selected true if pairs of this event match the filter of the user
+   */
+  void add(final long id, final double x, final double y, final boolean selected) {
+
+    if (this.size > 0 && id <= this.ids[this.size - 1])
+      throw new IllegalArgumentException("Events must be added ordered by id");
+
+    if (this.size == this.ids.length) {
+      final int capacity = this.size * 2;
+      this.ids = Arrays.copyOf(this.ids, capacity);
+      this.xs = Arrays.copyOf(this.xs, capacity);
+      this.ys = Arrays.copyOf(this.ys, capacity);
+      this.selected = Arrays.copyOf(this.selected, capacity);
+    }
+
+    this.ids[this.size] = id;
+    this.xs[this.size] = x;
+    this.ys[this.size] = y;
+    this.selected[this.size] = selected;
+
+    this.cells.computeIfAbsent(key(toCell(x), toCell(y)), k -> new Cell()).add(this.size);
+    this.size++;
+  }
+
+  /**
+   *
+   * @return the amount of events
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Visits the pairs ordered by the ids of their events. Pages are continued by keyset: pass the ids of
+   * the last pair of the previous page to continue after it, or 0 for the first page.
+   *
+   * @param afterFirst the id of the first event of the last pair of the previous page or 0
+   * @param afterSecond the id of the second event of the last pair of the previous page or 0
+   * @param limit the maximum amount of pairs to visit or 0 for all
+   * @param visitor receiving each pair
+   * @return the amount of pairs visited
+   * @throws IOException if thrown by the visitor
+   */
+  public long forEach(final long afterFirst, final long afterSecond, final int limit, final DistanceVisitor visitor)
+      throws IOException {
+
+    final double maxDistanceSquared = this.maxDistance * this.maxDistance;
+
+    int start = Arrays.binarySearch(this.ids, 0, this.size, afterFirst);
+    if (start < 0)
+      start = -start - 1;
+
+    int[] candidates = new int[16];
+    long count = 0;
+
+    for (int i = start; i < this.size; i++) {
+
+      final long minSecond = this.ids[i] == afterFirst ? Math.max(this.ids[i], afterSecond) : this.ids[i];
+      final int cellX = toCell(this.xs[i]);
+      final int cellY = toCell(this.ys[i]);
+
+      int amount = 0;
+      for (int dx = -1; dx <= 1; dx++) {
+        for (int dy = -1; dy <= 1; dy++) {
+
+          final Cell cell = this.cells.get(key(cellX + dx, cellY + dy));
+          if (cell == null)
+            continue;
+
+          for (int c = 0; c < cell.size; c++) {
+
+            final int j = cell.events[c];
+            if (this.ids[j] <= minSecond || !this.selected[i] && !this.selected[j])
+              continue;
+            if (distanceSquared(i, j) > maxDistanceSquared)
+              continue;
+
+            if (amount == candidates.length)
+              candidates = Arrays.copyOf(candidates, amount * 2);
+            candidates[amount++] = j;
+          }
+        }
+      }
+
+      // Events are stored ordered by id, so are their indices
+      Arrays.sort(candidates, 0, amount);
+
+      for (int c = 0; c < amount; c++) {
+
+        final int j = candidates[c];
+        visitor.visit(this.ids[i], this.ids[j], Math.sqrt(distanceSquared(i, j)));
+
+        if (++count == limit)
+          return count;
+      }
+    }
+    return count;
+  }
+
+  private double distanceSquared(final int i, final int j) {
+    final double dx = this.xs[i] - this.xs[j];
+    final double dy = this.ys[i] - this.ys[j];
+    return dx * dx + dy * dy;
+  }
+
+  private int toCell(final double value) {
+    return (int) Math.floor(value / this.cellSize);
+  }
+
+  private static long key(final int cellX, final int cellY) {
+    return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+  }
+
+  @FunctionalInterface
+  public interface DistanceVisitor {
+
+    /**
+     *
+     * @param firstId the id of the event with the lower id
+     * @param secondId the id of the event with the higher id
+     * @param distance the distance between both events in the units of the coordinates
+     * @throws IOException
+     */
+    void visit(long firstId, long secondId, double distance) throws IOException;
+  }
+
+  private static class Cell {
+
+    private int[] events = new int[4];
+    private int size = 0;
+
+    private void add(final int event) {
+      if (this.size == this.events.length)
+        this.events = Arrays.copyOf(this.events, this.size * 2);
+      this.events[this.size++] = event;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import one.tracking.framework.generator.repo.SpatialEventRepository;
+
+/**
+ * Finds the pairs of events within a maximum distance of each other. The locations of all events of
+ * the requested time range are loaded into memory and paired using a grid, see {@link DistancePairs}.
+ */
+@Service
+public class DistanceService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DistanceService.class);
+
+  @Autowired
+  private SpatialEventRepository repository;
+
+  @Value("${app.dist.max.events:1000000}")
+  private int maxEvents;
+
+  /**
+   *
+   * @param filter the restrictions of the pairs. The maximum distance is required.
+   * @return the pairs of the events matching the time range of the filter
+   * @throws IllegalArgumentException if the filter has no valid maximum distance or if more than
+   *         <code>app.dist.max.events</code> events are created within its time range
+   */
+  public DistancePairs load(final DistanceFilter filter) {
+
+    final Double maxDistance = filter.getMaxDistance();
+    if (maxDistance == null || !(maxDistance >= 0))
+      throw new IllegalArgumentException("A maximum distance of at least 0 is required to bound the pairs of events");
+
+    final String userId = filter.getUserId();
+    final DistancePairs pairs = new DistancePairs(maxDistance);
+
+    // One more than allowed, so exceeding the maximum is detected without loading all events
+    final long count = this.repository.forEachLocation(filter.getFrom(), filter.getTo(), this.maxEvents + 1,
+        (id, eventUserId, location) -> pairs.add(id, location.getX(), location.getY(),
+            userId == null || userId.equals(eventUserId)));
+
+    if (count > this.maxEvents)
+      throw new IllegalArgumentException("More than " + this.maxEvents
+          + " events are created within the requested time range, restrict it using from and to");
+
+    LOG.debug("Loaded {} events to find pairs within {}", count, maxDistance);
+    return pairs;
+  }
+}
@@ -0,0 +1,45 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Two distinct users having been close to each other at least once.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class Encounter {
+
+  private String userA;
+
+  private String userB;
+
+  /**
+   * The earlier timestamp of the first pair of close events.
+   */
+  private Instant firstContact;
+
+  /**
+   * The later timestamp of the last pair of close events.
+   */
+  private Instant lastContact;
+
+  /**
+   * The amount of pairs of close events.
+   */
+  private long contacts;
+
+  /**
+   * The smallest distance between close events in meters.
+   */
+  private double minDistance;
+
+}
@@ -0,0 +1,286 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import one.tracking.framework.generator.repo.SpatialEventRepository;
+import one.tracking.framework.generator.util.GeoDistance;
+
+/**
+ * Finds encounters of distinct users, i.e. pairs of events of different users within a given distance
+ * and time window.
+ * <p>
+ * Events are put into space-time buckets: a geohash cell of at least the given distance in both
+ * directions combined with a time slot of the length of the given window. Close events can only be
+ * located in the same or adjacent buckets, so every event is compared to the events of at most 27
+ * buckets. The buckets are processed in parallel.
+ */
+@Service
+public class EncounterService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EncounterService.class);
+
+  private static final int MAX_CELL_BITS = 31;
+
+  @Autowired
+  private SpatialEventRepository repository;
+
+  /**
+   *
+   * @param distance the maximum distance in meters. Intended for distances up to a few kilometers.
+   * @param window the maximum time between two events
+   * @param from the inclusive start of the time range of events to consider or null
+   * @param to the exclusive end of the time range of events to consider or null
+   * @return all encounters ordered by their first contact
+   */
+  public List<Encounter> findEncounters(final double distance, final Duration window, final Instant from,
+      final Instant to) {
+
+    if (distance < 0 || window.isNegative())
+      throw new IllegalArgumentException("Distance and window must not be negative");
+
+    final Tracks tracks = new Tracks();
+    this.repository.forEachEvent(from, to,
+        (userId, timestamp, location) -> tracks.add(userId, timestamp.toEpochMilli(), location.getY(),
+            location.getX()));
+
+    if (tracks.size < 2)
+      return Collections.emptyList();
+
+    final int bits = getCellBits(distance, tracks.maxAbsLatitude);
+    final long slotMillis = Math.max(1, window.toMillis());
+
+    final Map<BucketKey, Bucket> buckets = new HashMap<>();
+    for (int i = 0; i < tracks.size; i++) {
+      final BucketKey key = new BucketKey(
+          toCell(tracks.lats[i] + 90, 180, bits),
+          toCell(tracks.lngs[i] + 180, 360, bits),
+          Math.floorDiv(tracks.times[i], slotMillis));
+      buckets.computeIfAbsent(key, Bucket::new).add(i);
+    }
+
+    LOG.debug("Searching encounters of {} events in {} buckets using {} bit geohash cells", tracks.size,
+        buckets.size(), 2 * bits);
+
+    final List<Bucket> bucketList = new ArrayList<>(buckets.values());
+    final long windowMillis = window.toMillis();
+
+    final Map<Long, Contact> contacts = IntStream.range(0, bucketList.size()).parallel().collect(
+        HashMap::new,
+        (result, index) -> scan(bucketList.get(index), buckets, bits, tracks, distance, windowMillis, result),
+        EncounterService::merge);
+
+    final List<Encounter> encounters = new ArrayList<>(contacts.size());
+    for (final Map.Entry<Long, Contact> entry : contacts.entrySet()) {
+      final Contact contact = entry.getValue();
+      encounters.add(Encounter.builder()
+          .userA(tracks.users.get((int) (entry.getKey() >>> 32)))
+          .userB(tracks.users.get((int) (entry.getKey() & 0xFFFFFFFFL)))
+          .firstContact(Instant.ofEpochMilli(contact.first))
+          .lastContact(Instant.ofEpochMilli(contact.last))
+          .contacts(contact.count)
+          .minDistance(contact.minDistance)
+          .build());
+    }
+    encounters.sort(Comparator.comparing(Encounter::getFirstContact)
+        .thenComparing(Encounter::getUserA)
+        .thenComparing(Encounter::getUserB));
+    return encounters;
+  }
+
+  /*
+   * Compares each event of the bucket to all events with a higher index in the bucket itself and its
+   * adjacent buckets, so each pair of events is visited exactly once.
+   */
+  private static void scan(final Bucket bucket, final Map<BucketKey, Bucket> buckets, final int bits,
+      final Tracks tracks, final double distance, final long windowMillis, final Map<Long, Contact> result) {
+
+    final List<Bucket> neighbors = new ArrayList<>(27);
+    for (int dLat = -1; dLat <= 1; dLat++) {
+      for (int dLng = -1; dLng <= 1; dLng++) {
+        // Longitude cells wrap around at the antimeridian
+        final int lngCell = (int) Math.floorMod((long) bucket.key.lngCell + dLng, 1L << bits);
+        for (int dSlot = -1; dSlot <= 1; dSlot++) {
+          final Bucket neighbor = buckets.get(new BucketKey(bucket.key.latCell + dLat, lngCell,
+              bucket.key.slot + dSlot));
+          if (neighbor != null && !neighbors.contains(neighbor))
+            neighbors.add(neighbor);
+        }
+      }
+    }
+
+    for (int a = 0; a < bucket.size; a++) {
+
+      final int i = bucket.events[a];
+
+      for (final Bucket neighbor : neighbors) {
+        for (int b = 0; b < neighbor.size; b++) {
+
+          final int j = neighbor.events[b];
+          if (j <= i || tracks.userIndices[i] == tracks.userIndices[j])
+            continue;
+          if (Math.abs(tracks.times[i] - tracks.times[j]) > windowMillis)
+            continue;
+
+          final double meters = GeoDistance.haversine(tracks.lats[i], tracks.lngs[i], tracks.lats[j], tracks.lngs[j]);
+          if (meters > distance)
+            continue;
+
+          final int userA = Math.min(tracks.userIndices[i], tracks.userIndices[j]);
+          final int userB = Math.max(tracks.userIndices[i], tracks.userIndices[j]);
+          result.computeIfAbsent(((long) userA << 32) | userB, k -> new Contact())
+              .add(Math.min(tracks.times[i], tracks.times[j]), Math.max(tracks.times[i], tracks.times[j]), meters);
+        }
+      }
+    }
+  }
+
+  private static void merge(final Map<Long, Contact> target, final Map<Long, Contact> source) {
+    source.forEach((key, contact) -> target.merge(key, contact, Contact::merge));
+  }
+
+  /*
+   * The amount of bits per axis, so a cell spans at least the given distance in both directions at the
+   * given latitude. Longitude cells span twice the degrees of latitude cells like geohash cells with an
+   * even amount of bits.
+   */
+  private static int getCellBits(final double distance, final double maxAbsLatitude) {
+    if (distance <= 0)
+      return MAX_CELL_BITS;
+
+    final double cos = Math.cos(Math.toRadians(Math.min(90, maxAbsLatitude)));
+    final double cellsPerDistance = Math.min(180, 360 * cos) * GeoDistance.METERS_PER_DEGREE / distance;
+    if (cellsPerDistance < 2)
+      return 0;
+    return (int) Math.min(MAX_CELL_BITS, Math.floor(Math.log(cellsPerDistance) / Math.log(2)));
+  }
+
+  private static int toCell(final double offset, final double range, final int bits) {
+    return (int) Math.min((1L << bits) - 1, Math.max(0, (long) Math.floor(offset / range * (1L << bits))));
+  }
+
+  /*
+   * All loaded events as columns. Users are referenced by their index.
+   */
+  private static class Tracks {
+
+    private final Map<String, Integer> userIds = new HashMap<>();
+    private final List<String> users = new ArrayList<>();
+
+    private int[] userIndices = new int[1024];
+    private long[] times = new long[1024];
+    private double[] lats = new double[1024];
+    private double[] lngs = new double[1024];
+    private int size = 0;
+    private double maxAbsLatitude = 0;
+
+    private void add(final String userId, final long time, final double lat, final double lng) {
+      if (this.size == this.times.length) {
+        final int capacity = this.size * 2;
+        this.userIndices = Arrays.copyOf(this.userIndices, capacity);
+        this.times = Arrays.copyOf(this.times, capacity);
+        this.lats = Arrays.copyOf(this.lats, capacity);
+        this.lngs = Arrays.copyOf(this.lngs, capacity);
+      }
+
+      Integer userIndex = this.userIds.get(userId);
+      if (userIndex == null) {
+        userIndex = this.users.size();
+        this.users.add(userId);
+        this.userIds.put(userId, userIndex);
+      }
+
+      this.userIndices[this.size] = userIndex;
+      this.times[this.size] = time;
+      this.lats[this.size] = lat;
+      this.lngs[this.size] = lng;
+      this.size++;
+      this.maxAbsLatitude = Math.max(this.maxAbsLatitude, Math.abs(lat));
+    }
+  }
+
+  private static class BucketKey {
+
+    private final int latCell;
+    private final int lngCell;
+    private final long slot;
+
+    private BucketKey(final int latCell, final int lngCell, final long slot) {
+      this.latCell = latCell;
+      this.lngCell = lngCell;
+      this.slot = slot;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = this.latCell;
+      result = 31 * result + this.lngCell;
+      result = 31 * result + Long.hashCode(this.slot);
+      return result;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof BucketKey))
+        return false;
+      final BucketKey other = (BucketKey) obj;
+      return this.latCell == other.latCell && this.lngCell == other.lngCell && this.slot == other.slot;
+    }
+  }
+
+  private static class Bucket {
+
+    private final BucketKey key;
+    private int[] events = new int[8];
+    private int size = 0;
+
+    private Bucket(final BucketKey key) {
+      this.key = key;
+    }
+
+    private void add(final int event) {
+      if (this.size == this.events.length)
+        this.events = Arrays.copyOf(this.events, this.size * 2);
+      this.events[this.size++] = event;
+    }
+  }
+
+  private static class Contact {
+
+    private long first = Long.MAX_VALUE;
+    private long last = Long.MIN_VALUE;
+    private long count = 0;
+    private double minDistance = Double.MAX_VALUE;
+
+    private void add(final long start, final long end, final double distance) {
+      this.first = Math.min(this.first, start);
+      this.last = Math.max(this.last, end);
+      this.minDistance = Math.min(this.minDistance, distance);
+      this.count++;
+    }
+
+    private Contact merge(final Contact other) {
+      this.first = Math.min(this.first, other.first);
+      this.last = Math.max(this.last, other.last);
+      this.minDistance = Math.min(this.minDistance, other.minDistance);
+      this.count += other.count;
+      return this;
+    }
+  }
+}
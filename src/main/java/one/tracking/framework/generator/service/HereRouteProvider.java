@@ -0,0 +1,98 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.PostConstruct;
+import org.locationtech.jts.geom.Coordinate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import one.tracking.framework.generator.hereapi.Route;
+import one.tracking.framework.generator.hereapi.RouteResult;
+import one.tracking.framework.generator.hereapi.Section;
+import one.tracking.framework.generator.util.PolylineEncoderDecoder;
+import one.tracking.framework.generator.util.PolylineEncoderDecoder.CoordinateBuffer;
+
+/**
+ * Fetches routes from the HERE Routing API. Fetched polylines are kept in the {@link RouteCache}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.route.provider", havingValue = "here", matchIfMissing = true)
+public class HereRouteProvider implements RouteProvider {
+
+  @Autowired
+  private RouteFetchEngine routeFetchEngine;
+
+  @Autowired
+  private RouteCache routeCache;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private Timer decodeTimer;
+
+  private DistributionSummary decodedPoints;
+
+  @PostConstruct
+  private void init() {
+    this.decodeTimer = Timer.builder("generator.route.decode")
+        .description("Time to decode the polyline of a route")
+        .register(this.meterRegistry);
+    this.decodedPoints = DistributionSummary.builder("generator.route.points")
+        .description("Positions of a decoded route")
+        .register(this.meterRegistry);
+  }
+
+  @Override
+  public CompletableFuture<CoordinateBuffer> route(final Coordinate start, final Coordinate end,
+      final String mode) {
+
+    final String cached = this.routeCache.get(start, end, mode);
+
+    final CompletableFuture<String> polyline = cached != null
+        ? CompletableFuture.completedFuture(cached)
+        : this.routeFetchEngine.submit(start, end, mode).thenApply(result -> {
+          final String fetched = getPolyline(result);
+          if (fetched != null)
+            this.routeCache.put(start, end, mode, fetched);
+          return fetched;
+        });
+
+    return polyline.thenApply(result -> result == null ? null : decode(result));
+  }
+
+  private CoordinateBuffer decode(final String polyline) {
+    final CoordinateBuffer positions = this.decodeTimer.record(
+        () -> PolylineEncoderDecoder.decode(polyline, new CoordinateBuffer()));
+    this.decodedPoints.record(positions.size());
+    return positions;
+  }
+
+  /**
+   *
+   * @param result
+   * @return the encoded polyline of the first section of the first route or null if there is none
+   */
+  private String getPolyline(final RouteResult result) {
+
+    if (result == null || result.getRoutes() == null || result.getRoutes().isEmpty())
+      return null;
+
+    final Route route = result.getRoutes().get(0);
+
+    if (route.getSections() == null || route.getSections().isEmpty())
+      return null;
+
+    final Section section = route.getSections().get(0);
+
+    if (section.getPolyline() == null || section.getPolyline().trim().isEmpty())
+      return null;
+
+    return section.getPolyline();
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import javax.annotation.PostConstruct;
+import org.locationtech.jts.geom.Coordinate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import one.tracking.framework.generator.routing.OsmGraphBuilder;
+import one.tracking.framework.generator.routing.RoadGraph;
+import one.tracking.framework.generator.util.PolylineEncoderDecoder.CoordinateBuffer;
+import one.tracking.framework.generator.util.WorkerPool;
+
+/**
+ * Calculates pedestrian routes locally on the walkable ways of an OpenStreetMap extract. The extract is
+ * preprocessed into a {@link RoadGraph} file once, which is memory mapped on later startups as long as
+ * it is newer than the extract.
+ */
+@Component
+@ConditionalOnProperty(name = "app.route.provider", havingValue = "osm")
+public class OsmRouteProvider implements RouteProvider, DisposableBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OsmRouteProvider.class);
+
+  @Value("${app.route.osm.file:}")
+  private String osmFile;
+
+  @Value("${app.route.osm.graph:${java.io.tmpdir}/osm.graph}")
+  private String graphFile;
+
+  @Value("${app.route.workers:4}")
+  private int workers;
+
+  private RoadGraph graph;
+
+  private ThreadPoolExecutor executor;
+
+  @PostConstruct
+  private void init() throws IOException {
+
+    if (this.osmFile == null || this.osmFile.trim().isEmpty())
+      throw new IllegalStateException("No OpenStreetMap extract configured: app.route.osm.file");
+
+    final Path osm = Paths.get(this.osmFile);
+    final Path graphPath = Paths.get(this.graphFile);
+
+    if (!Files.exists(graphPath)
+        || Files.getLastModifiedTime(graphPath).compareTo(Files.getLastModifiedTime(osm)) < 0) {
+
+      LOG.info("Building road graph from: {} ...", this.osmFile);
+      if (graphPath.toAbsolutePath().getParent() != null)
+        Files.createDirectories(graphPath.toAbsolutePath().getParent());
+      new OsmGraphBuilder().build(osm, graphPath);
+    }
+
+    this.graph = RoadGraph.load(graphPath);
+
+    LOG.info("Loaded road graph of {} nodes from: {}", this.graph.getNodeCount(), this.graphFile);
+
+    this.executor = WorkerPool.create("route-osm", this.workers);
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    if (this.executor != null)
+      this.executor.shutdownNow();
+  }
+
+  @Override
+  public CompletableFuture<CoordinateBuffer> route(final Coordinate start, final Coordinate end,
+      final String mode) {
+    return CompletableFuture.supplyAsync(() -> this.graph.route(start.x, start.y, end.x, end.y), this.executor);
+  }
+}
@@ -0,0 +1,162 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.PostConstruct;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Describes the daily routine of generated users. Every user lives at a home, works at a work place and
+ * spends the spare time at a few favorite places, all located randomly within the envelope.
+ * <p>
+ * On workdays a user leaves home in the morning for work, visits favorite places afterwards and returns
+ * home. On weekends favorite places are visited instead of the work place. The time of leaving home and
+ * the time spent at each place are normally distributed.
+ * <p>
+ * All random values are drawn from the given {@link Random}, so a user can be reproduced from its seed
+ * regardless of the thread generating it.
+ */
+@Component
+public class PopulationModel {
+
+  private static final int LEISURE_PLACES = 3;
+
+  private static final Duration MIN_STAY = Duration.ofMinutes(5);
+
+  /*
+   * Standard deviation of the time spent at a place relative to the mean
+   */
+  private static final double STAY_DEVIATION = 0.25;
+
+  @Autowired
+  private Envelope envelope;
+
+  @Value("${app.create.amount.travels}")
+  private int travelsPerDay;
+
+  @Value("${app.create.start.time:07:30}")
+  private String startTime;
+
+  @Value("${app.create.start.deviation:60}")
+  private double startDeviation;
+
+  @Value("${app.create.stay.work:480}")
+  private double workStay;
+
+  @Value("${app.create.stay.leisure:90}")
+  private double leisureStay;
+
+  private LocalTime meanDeparture;
+
+  @PostConstruct
+  private void init() {
+    this.meanDeparture = LocalTime.parse(this.startTime);
+  }
+
+  /**
+   * Derives the seed of a single user from the seed of a run, so every user can be generated
+   * independently.
+   *
+   * @param seed the seed of the run
+   * @param user the index of the user
+   * @return the seed of the user
+   */
+  public static long seedOf(final long seed, final long user) {
+    // SplitMix64
+    long z = seed + (user + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   *
+   * @param random
+   * @return a user with places randomly located within the envelope
+   */
+  public Resident createResident(final Random random) {
+
+    final List<Coordinate> leisure = new ArrayList<>(LEISURE_PLACES);
+    for (int i = 0; i < LEISURE_PLACES; i++) {
+      leisure.add(createPlace(random));
+    }
+
+    return Resident.builder()
+        .home(createPlace(random))
+        .work(createPlace(random))
+        .leisure(leisure)
+        .build();
+  }
+
+  /**
+   *
+   * @param resident
+   * @param date
+   * @param random
+   * @return the travels of the given user on the given date. The configured amount of travels per day
+   *         is split into the travel to work or a favorite place, travels to favorite places and the
+   *         travel back home.
+   */
+  public DayPlan planDay(final Resident resident, final LocalDate date, final Random random) {
+
+    final boolean workday = date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY;
+    final int travels = Math.max(1, this.travelsPerDay);
+
+    final List<Stop> stops = new ArrayList<>(travels + 1);
+    stops.add(Stop.builder().location(resident.getHome()).stay(Duration.ZERO).build());
+
+    for (int i = 1; i <= travels; i++) {
+
+      if (i == travels && travels > 1) {
+        stops.add(Stop.builder().location(resident.getHome()).stay(Duration.ZERO).build());
+
+      } else if (i == 1 && workday) {
+        stops.add(Stop.builder().location(resident.getWork()).stay(nextStay(this.workStay, random)).build());
+
+      } else {
+        // Do not stay at the same place
+        final Coordinate previous = stops.get(stops.size() - 1).getLocation();
+        int place = random.nextInt(resident.getLeisure().size());
+        if (resident.getLeisure().get(place).equals2D(previous))
+          place = (place + 1) % resident.getLeisure().size();
+
+        stops.add(Stop.builder()
+            .location(resident.getLeisure().get(place))
+            .stay(nextStay(this.leisureStay, random))
+            .build());
+      }
+    }
+
+    final long deviation = Math.round(random.nextGaussian() * this.startDeviation * 60);
+
+    return DayPlan.builder()
+        .departure(date.atTime(this.meanDeparture).atOffset(ZoneOffset.UTC).plusSeconds(deviation))
+        .stops(stops)
+        .build();
+  }
+
+  private Coordinate createPlace(final Random random) {
+    // The envelope is given as lat/lng
+    return new Coordinate(
+        this.envelope.getMinX() + random.nextDouble() * this.envelope.getWidth(),
+        this.envelope.getMinY() + random.nextDouble() * this.envelope.getHeight());
+  }
+
+  private static Duration nextStay(final double meanMinutes, final Random random) {
+    final double minutes = meanMinutes * (1 + STAY_DEVIATION * random.nextGaussian());
+    return Duration.ofSeconds(Math.max(MIN_STAY.getSeconds(), Math.round(minutes * 60)));
+  }
+}
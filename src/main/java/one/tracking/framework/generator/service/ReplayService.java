@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import one.tracking.framework.generator.repo.SpatialEventRepository;
+import one.tracking.framework.generator.repo.TrackPoint;
+
+/**
+ * Replays the persisted tracks as a live feed. The track of each user is read page by page ordered by
+ * timestamp and the tracks of all users are merged in time order using a heap, so only a bounded amount
+ * of events is kept in memory regardless of the amount of persisted events. Pages are read as
+ * {@link TrackPoint} projections, so they are not retained by the persistence context of the request.
+ * <p>
+ * Events are emitted in real time relative to the first event, accelerated by the given speed factor.
+ */
+@Service
+public class ReplayService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReplayService.class);
+
+  /**
+   * The default start of the time range if none is given.
+   */
+  public static final Instant MIN_TIMESTAMP = Instant.EPOCH;
+
+  /**
+   * The default end of the time range if none is given.
+   */
+  public static final Instant MAX_TIMESTAMP = Instant.parse("9999-12-31T23:59:59Z");
+
+  private static final int MIN_PAGE_SIZE = 16;
+
+  private static final Comparator<TrackCursor> ORDER = Comparator
+      .comparing((final TrackCursor cursor) -> cursor.peek().getTimestampCreate())
+      .thenComparingLong(cursor -> cursor.peek().getId());
+
+  @Autowired
+  private SpatialEventRepository repository;
+
+  @Value("${app.replay.buffer.size:100000}")
+  private int bufferSize;
+
+  /**
+   * Emits all events within the given time range ordered by their timestamp. Blocks until all events
+   * have been emitted or the current thread is interrupted.
+   *
+   * @param from the inclusive start of the time range or null
+   * @param to the exclusive end of the time range or null
+   * @param speed the factor to accelerate the replay by, e.g. 10 for ten times real time. A value of 0
+   *        emits all events as fast as possible.
+   * @param sink receiving the events
+   * @return the amount of emitted events
+   * @throws IOException if the sink failed, e.g. because the client disconnected
+   */
+  public long replay(final Instant from, final Instant to, final double speed, final ReplaySink sink)
+      throws IOException {
+
+    if (!(speed >= 0))
+      throw new IllegalArgumentException("Speed must not be negative");
+
+    final Instant start = from == null ? MIN_TIMESTAMP : from;
+    final Instant end = to == null ? MAX_TIMESTAMP : to;
+
+    final List<String> userIds = this.repository.findUserIds();
+    final int pageSize = Math.max(MIN_PAGE_SIZE, Math.max(0, this.bufferSize) / Math.max(1, userIds.size()));
+
+    LOG.info("Replaying events of {} users at speed {} reading {} events per user at once", userIds.size(),
+        speed, pageSize);
+
+    final PriorityQueue<TrackCursor> heap = new PriorityQueue<>(Math.max(1, userIds.size()), ORDER);
+    for (final String userId : userIds) {
+      final TrackCursor cursor = new TrackCursor(userId, start, end, pageSize);
+      if (cursor.hasNext())
+        heap.add(cursor);
+    }
+
+    final long startNanos = System.nanoTime();
+    Instant first = null;
+    long count = 0;
+
+    while (!heap.isEmpty()) {
+
+      final TrackCursor cursor = heap.poll();
+      final TrackPoint event = cursor.next();
+
+      if (speed > 0) {
+        if (first == null)
+          first = event.getTimestampCreate();
+
+        final long due = startNanos
+            + (long) (Duration.between(first, event.getTimestampCreate()).toNanos() / speed);
+        if (due - System.nanoTime() > 0) {
+          sink.flush();
+          if (!sleepUntil(due))
+            break;
+        }
+      }
+
+      sink.emit(event);
+      count++;
+
+      if (cursor.hasNext())
+        heap.add(cursor);
+    }
+
+    sink.flush();
+    return count;
+  }
+
+  /*
+   * Returns false if interrupted.
+   */
+  private static boolean sleepUntil(final long due) {
+    long remaining;
+    while ((remaining = due - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+      if (Thread.currentThread().isInterrupted())
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Receives the replayed events.
+   */
+  public interface ReplaySink {
+
+    void emit(TrackPoint event) throws IOException;
+
+    /**
+     * Called whenever the replay waits for the next event to become due and after the last event.
+     *
+     * @throws IOException
+     */
+    void flush() throws IOException;
+  }
+
+  /*
+   * Position within the track of a single user, holding the current page of events.
+   */
+  private class TrackCursor {
+
+    private final String userId;
+    private final Instant to;
+    private final int pageSize;
+
+    private List<TrackPoint> page = Collections.emptyList();
+    private int index = 0;
+    private boolean last = false;
+    private Instant lastTimestamp;
+    private long lastId = -1;
+
+    private TrackCursor(final String userId, final Instant from, final Instant to, final int pageSize) {
+      this.userId = userId;
+      this.lastTimestamp = from;
+      this.to = to;
+      this.pageSize = pageSize;
+    }
+
+    private boolean hasNext() {
+      if (this.index < this.page.size())
+        return true;
+      if (this.last)
+        return false;
+
+      this.page = ReplayService.this.repository.findTrackPageAfter(this.userId, this.lastTimestamp, this.lastId,
+          this.to, PageRequest.of(0, this.pageSize));
+      this.index = 0;
+      this.last = this.page.size() < this.pageSize;
+      return !this.page.isEmpty();
+    }
+
+    private TrackPoint peek() {
+      return this.page.get(this.index);
+    }
+
+    private TrackPoint next() {
+      final TrackPoint event = this.page.get(this.index++);
+      this.lastTimestamp = event.getTimestampCreate();
+      this.lastId = event.getId();
+      return event;
+    }
+  }
+}
@@ -0,0 +1,32 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.util.List;
+import org.locationtech.jts.geom.Coordinate;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The places a generated user regularly travels between. Coordinates have the latitude as x and the
+ * longitude as y like the configured envelope.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class Resident {
+
+  private Coordinate home;
+
+  private Coordinate work;
+
+  /**
+   * The places visited in the spare time.
+   */
+  private List<Coordinate> leisure;
+
+}
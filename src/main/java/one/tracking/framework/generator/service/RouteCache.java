@@ -0,0 +1,301 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import org.locationtech.jts.geom.Coordinate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Two tiered cache of encoded route polylines keyed by transport mode and the origin and destination
+ * snapped to a grid of the configured precision.
+ * <p>
+ * The first tier is a bounded in-memory LRU map. The second tier is an append-only file containing one
+ * <code>key polyline</code> line per route. Only the file offsets of the entries are kept in memory,
+ * the polylines themselves are read from disk on demand, without holding the lock of the cache.
+ */
+@Component
+@ConditionalOnProperty(name = "app.route.provider", havingValue = "here", matchIfMissing = true)
+public class RouteCache implements DisposableBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RouteCache.class);
+
+  private static final char SEPARATOR = ' ';
+
+  private static final char NEWLINE = '\n';
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${app.route.cache.file:}")
+  private String cacheFile;
+
+  @Value("${app.route.cache.size:10000}")
+  private int cacheSize;
+
+  @Value("${app.route.cache.precision:4}")
+  private int precision;
+
+  private final AtomicLong hits = new AtomicLong(0);
+
+  private final AtomicLong misses = new AtomicLong(0);
+
+  private double multiplier;
+
+  private Map<String, String> memory;
+
+  private final Map<String, DiskEntry> index = new HashMap<>();
+
+  private FileChannel file;
+
+  private long fileLength;
+
+  @PostConstruct
+  private void init() throws IOException {
+
+    this.multiplier = Math.pow(10, Math.max(0, this.precision));
+
+    final int maxEntries = Math.max(0, this.cacheSize);
+    this.memory = new LinkedHashMap<String, String>(16, 0.75f, true) {
+
+      private static final long serialVersionUID = -2371930404651962217L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+        return size() > maxEntries;
+      }
+    };
+
+    FunctionCounter.builder("generator.route.cache", this, RouteCache::getHits)
+        .description("Lookups of the route cache")
+        .tag("result", "hit")
+        .register(this.meterRegistry);
+    FunctionCounter.builder("generator.route.cache", this, RouteCache::getMisses)
+        .description("Lookups of the route cache")
+        .tag("result", "miss")
+        .register(this.meterRegistry);
+
+    if (this.cacheFile == null || this.cacheFile.trim().isEmpty())
+      return;
+
+    final Path path = Paths.get(this.cacheFile);
+    if (path.getParent() != null)
+      Files.createDirectories(path.getParent());
+
+    final long validLength = Files.exists(path) ? loadIndex(path) : 0;
+
+    this.file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (this.file.size() != validLength) {
+      LOG.warn("Discarding incomplete trailing entry of route cache: {}", this.cacheFile);
+      this.file.truncate(validLength);
+    }
+    this.fileLength = validLength;
+
+    LOG.info("Loaded route cache containing {} routes from: {}", this.index.size(), this.cacheFile);
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    LOG.info("Route cache hits: {}, misses: {}", this.hits.get(), this.misses.get());
+    synchronized (this) {
+      if (this.file != null) {
+        this.file.close();
+        this.file = null;
+      }
+    }
+  }
+
+  /**
+   *
+   * @param start
+   * @param end
+   * @param mode
+   * @return the cached encoded polyline or null if there is none
+   */
+  public String get(final Coordinate start, final Coordinate end, final String mode) {
+
+    final String key = createKey(start, end, mode);
+
+    String polyline;
+    try {
+      polyline = lookup(key);
+    } catch (final IOException e) {
+      LOG.warn("Reading from the route cache failed: {}", e.getMessage());
+      polyline = null;
+    }
+    if (polyline == null) {
+      this.misses.incrementAndGet();
+    } else {
+      this.hits.incrementAndGet();
+    }
+    return polyline;
+  }
+
+  /**
+   *
+   * @param start
+   * @param end
+   * @param mode
+   * @param polyline the encoded polyline
+   */
+  public synchronized void put(final Coordinate start, final Coordinate end, final String mode,
+      final String polyline) {
+
+    final String key = createKey(start, end, mode);
+
+    this.memory.put(key, polyline);
+
+    if (this.file == null || this.index.containsKey(key))
+      return;
+
+    try {
+      append(key, polyline);
+    } catch (final IOException e) {
+      LOG.warn("Writing to the route cache failed: {}", e.getMessage());
+    }
+  }
+
+  public long getHits() {
+    return this.hits.get();
+  }
+
+  public long getMisses() {
+    return this.misses.get();
+  }
+
+  private void append(final String key, final String polyline) throws IOException {
+
+    final byte[] keyBytes = key.getBytes(StandardCharsets.US_ASCII);
+    final byte[] polylineBytes = polyline.getBytes(StandardCharsets.US_ASCII);
+
+    final long offset = this.fileLength;
+    final byte[] line = new byte[keyBytes.length + polylineBytes.length + 2];
+    System.arraycopy(keyBytes, 0, line, 0, keyBytes.length);
+    line[keyBytes.length] = SEPARATOR;
+    System.arraycopy(polylineBytes, 0, line, keyBytes.length + 1, polylineBytes.length);
+    line[line.length - 1] = NEWLINE;
+
+    final ByteBuffer buffer = ByteBuffer.wrap(line);
+    while (buffer.hasRemaining()) {
+      this.file.write(buffer, offset + buffer.position());
+    }
+    this.fileLength = offset + line.length;
+
+    // Published after writing, so lookups only read complete entries
+    this.index.put(key, new DiskEntry(offset + keyBytes.length + 1, polylineBytes.length));
+  }
+
+  private String lookup(final String key) throws IOException {
+
+    final DiskEntry entry;
+    final FileChannel file;
+    synchronized (this) {
+      final String polyline = this.memory.get(key);
+      if (polyline != null || this.file == null)
+        return polyline;
+
+      entry = this.index.get(key);
+      if (entry == null)
+        return null;
+      file = this.file;
+    }
+
+    // Positional reads do not depend on the position of the channel, so they may run concurrently
+    final ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+    while (buffer.hasRemaining()) {
+      if (file.read(buffer, entry.offset + buffer.position()) < 0)
+        throw new IOException("Unexpected end of the route cache file");
+    }
+
+    final String loaded = new String(buffer.array(), StandardCharsets.US_ASCII);
+    synchronized (this) {
+      this.memory.put(key, loaded);
+    }
+    return loaded;
+  }
+
+  private String createKey(final Coordinate start, final Coordinate end, final String mode) {
+    return new StringBuilder(mode)
+        .append(':').append(snap(start.x))
+        .append(':').append(snap(start.y))
+        .append(':').append(snap(end.x))
+        .append(':').append(snap(end.y))
+        .toString();
+  }
+
+  private long snap(final double value) {
+    return Math.round(value * this.multiplier);
+  }
+
+  /*
+   * Scans the cache file and records the offsets of all complete entries.
+   *
+   * @return the length of the file up to the end of the last complete entry
+   */
+  private long loadIndex(final Path path) throws IOException {
+
+    long offset = 0;
+    long lineStart = 0;
+    long separator = -1;
+    final StringBuilder key = new StringBuilder();
+
+    try (final InputStream in = new BufferedInputStream(new FileInputStream(path.toFile()), 1 << 16)) {
+
+      int b;
+      while ((b = in.read()) != -1) {
+
+        if (b == NEWLINE) {
+          if (separator > lineStart) {
+            this.index.put(key.toString(), new DiskEntry(separator + 1, (int) (offset - separator - 1)));
+          }
+          key.setLength(0);
+          separator = -1;
+          lineStart = offset + 1;
+        } else if (separator < 0) {
+          if (b == SEPARATOR) {
+            separator = offset;
+          } else {
+            key.append((char) b);
+          }
+        }
+        offset++;
+      }
+    }
+    return lineStart;
+  }
+
+  private static class DiskEntry {
+
+    private final long offset;
+    private final int length;
+
+    private DiskEntry(final long offset, final int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+}
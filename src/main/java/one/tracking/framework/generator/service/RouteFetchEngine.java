@@ -0,0 +1,219 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.locationtech.jts.geom.Coordinate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import one.tracking.framework.generator.hereapi.RouteResult;
+import one.tracking.framework.generator.util.TokenBucketRateLimiter;
+import one.tracking.framework.generator.util.WorkerPool;
+
+/**
+ * Fetches routes from the HERE Routing API concurrently. Requests are executed by a bounded pool of
+ * workers, throttled by a token bucket and retried with exponential backoff on 429 and 5xx responses
+ * as well as on I/O errors.
+ * <p>
+ * The latency of every attempt is recorded by outcome, as well as the amount of retries and of requests
+ * failing after all retries.
+ */
+@Component
+@ConditionalOnProperty(name = "app.route.provider", havingValue = "here", matchIfMissing = true)
+public class RouteFetchEngine implements DisposableBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RouteFetchEngine.class);
+
+  private static final String REQUEST_TIMER = "generator.route.requests";
+
+  @Autowired
+  private RestTemplate restTemplate;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${app.apiKey}")
+  private String apiKey;
+
+  @Value("${app.route.url:https://router.hereapi.com/v8/routes}")
+  private String routeUrl;
+
+  @Value("${app.route.workers:4}")
+  private int workers;
+
+  @Value("${app.route.rate:10}")
+  private double requestsPerSecond;
+
+  @Value("${app.route.retry.max:5}")
+  private int maxRetries;
+
+  @Value("${app.route.retry.backoff:500}")
+  private long backoffMillis;
+
+  private TokenBucketRateLimiter rateLimiter;
+
+  private ThreadPoolExecutor executor;
+
+  private Counter retries;
+
+  private Counter errors;
+
+  @PostConstruct
+  private void init() {
+    final int poolSize = Math.max(1, this.workers);
+
+    this.retries = Counter.builder("generator.route.retries")
+        .description("Retries of failed route requests")
+        .register(this.meterRegistry);
+    this.errors = Counter.builder("generator.route.errors")
+        .description("Route requests failed after all retries")
+        .register(this.meterRegistry);
+
+    this.rateLimiter = new TokenBucketRateLimiter(this.requestsPerSecond, poolSize);
+    this.executor = WorkerPool.create("route-fetch", poolSize);
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * Submits a route request to the worker pool.
+   *
+   * @param start
+   * @param end
+   * @param mode the transport mode
+   * @return a {@link CompletableFuture} completed with the {@link RouteResult} or exceptionally if the
+   *         request failed after all retries
+   */
+  public CompletableFuture<RouteResult> submit(final Coordinate start, final Coordinate end, final String mode) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return fetch(start, end, mode);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CompletionException(e);
+      }
+    }, this.executor);
+  }
+
+  /**
+   * Performs a rate limited route request on the current thread, retrying on 429, 5xx and I/O errors.
+   *
+   * @param start
+   * @param end
+   * @param mode the transport mode
+   * @return
+   * @throws InterruptedException
+   */
+  public RouteResult fetch(final Coordinate start, final Coordinate end, final String mode)
+      throws InterruptedException {
+
+    int attempt = 0;
+    while (true) {
+
+      this.rateLimiter.acquire();
+
+      final long startNanos = System.nanoTime();
+      try {
+        final RouteResult result = this.restTemplate.getForObject(
+            this.routeUrl
+                + "?transportMode={mode}&origin={latA},{lonA}&destination={latB},{lonB}&return={return}&apiKey={apiKey}",
+            RouteResult.class,
+            mode,
+            start.x,
+            start.y,
+            end.x,
+            end.y,
+            "polyline",
+            this.apiKey);
+
+        recordRequest("SUCCESS", startNanos);
+        return result;
+
+      } catch (final HttpStatusCodeException e) {
+
+        recordRequest(e.getStatusCode().series().name(), startNanos);
+
+        if (!isRetryable(e.getStatusCode()) || attempt >= this.maxRetries) {
+          this.errors.increment();
+          throw e;
+        }
+
+        final long delay = Math.max(getRetryAfterMillis(e), getBackoffMillis(attempt));
+        LOG.warn("Route request failed with status {}. Retrying in {} ms ...", e.getStatusCode(), delay);
+        this.retries.increment();
+        Thread.sleep(delay);
+
+      } catch (final ResourceAccessException e) {
+
+        recordRequest("IO_ERROR", startNanos);
+
+        if (attempt >= this.maxRetries) {
+          this.errors.increment();
+          throw e;
+        }
+
+        final long delay = getBackoffMillis(attempt);
+        LOG.warn("Route request failed: {}. Retrying in {} ms ...", e.getMessage(), delay);
+        this.retries.increment();
+        Thread.sleep(delay);
+
+      } catch (final RuntimeException e) {
+
+        // E.g. an unreadable response, which is not retried
+        recordRequest("UNKNOWN", startNanos);
+        this.errors.increment();
+        throw e;
+      }
+
+      attempt++;
+    }
+  }
+
+  private void recordRequest(final String outcome, final long startNanos) {
+    this.meterRegistry.timer(REQUEST_TIMER, "outcome", outcome)
+        .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private boolean isRetryable(final HttpStatus status) {
+    return status == HttpStatus.TOO_MANY_REQUESTS || status.is5xxServerError();
+  }
+
+  private long getBackoffMillis(final int attempt) {
+    return this.backoffMillis << Math.min(attempt, 16);
+  }
+
+  private long getRetryAfterMillis(final HttpStatusCodeException e) {
+
+    if (e.getResponseHeaders() == null)
+      return 0;
+
+    final String retryAfter = e.getResponseHeaders().getFirst("Retry-After");
+    if (retryAfter == null)
+      return 0;
+
+    try {
+      return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+    } catch (final NumberFormatException ex) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,25 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.util.concurrent.CompletableFuture;
+import org.locationtech.jts.geom.Coordinate;
+import one.tracking.framework.generator.util.PolylineEncoderDecoder.CoordinateBuffer;
+
+/**
+ * Calculates routes between two positions. The implementation is chosen by the property
+ * <code>app.route.provider</code>.
+ */
+public interface RouteProvider {
+
+  /**
+   *
+   * @param start the origin with x as latitude and y as longitude
+   * @param end the destination with x as latitude and y as longitude
+   * @param mode the transport mode
+   * @return a {@link CompletableFuture} completed with the positions of the route or null if there is no
+   *         route
+   */
+  CompletableFuture<CoordinateBuffer> route(Coordinate start, Coordinate end, String mode);
+}
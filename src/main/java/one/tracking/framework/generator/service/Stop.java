@@ -0,0 +1,32 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.time.Duration;
+import org.locationtech.jts.geom.Coordinate;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A place visited within a {@link DayPlan}.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class Stop {
+
+  /**
+   * The place with the latitude as x and the longitude as y.
+   */
+  private Coordinate location;
+
+  /**
+   * The time spent at the place after arriving before travelling to the next stop.
+   */
+  private Duration stay;
+
+}
@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import javax.annotation.PostConstruct;
+import org.locationtech.jts.geom.Coordinate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import one.tracking.framework.generator.util.GeoDistance;
+import one.tracking.framework.generator.util.PolylineEncoderDecoder.CoordinateBuffer;
+import one.tracking.framework.generator.util.WorkerPool;
+
+/**
+ * Creates street-like pedestrian routes locally without any external service, so data can be generated
+ * offline and limited by the available cores only.
+ * <p>
+ * A route follows a virtual street grid aligned to north and east from the origin to the destination.
+ * At every intersection the pedestrian keeps walking straight or turns towards the destination, so the
+ * route never leaves the bounding box of origin and destination. Intersections deviate randomly from
+ * the regular grid.
+ * <p>
+ * The random decisions of a route are seeded by its origin and destination, so the same travel always
+ * results in the same route, regardless of the thread or node creating it.
+ */
+@Component
+@ConditionalOnProperty(name = "app.route.provider", havingValue = "synthetic")
+public class SyntheticRouteProvider implements RouteProvider, DisposableBean {
+
+  /*
+   * Routes are calculated without waiting for I/O, 0 uses one thread per available processor
+   */
+  @Value("${app.route.synthetic.workers:0}")
+  private int workers;
+
+  @Value("${app.route.synthetic.block:100}")
+  private double blockLength;
+
+  @Value("${app.route.synthetic.straightness:0.7}")
+  private double straightness;
+
+  @Value("${app.route.synthetic.jitter:5}")
+  private double jitter;
+
+  private ThreadPoolExecutor executor;
+
+  @PostConstruct
+  private void init() {
+    final int poolSize = this.workers > 0 ? this.workers : Runtime.getRuntime().availableProcessors();
+    this.executor = WorkerPool.create("route-synthetic", poolSize);
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    this.executor.shutdownNow();
+  }
+
+  @Override
+  public CompletableFuture<CoordinateBuffer> route(final Coordinate start, final Coordinate end,
+      final String mode) {
+    return CompletableFuture.supplyAsync(
+        () -> createRoute(start.x, start.y, end.x, end.y, new Random(seedOf(start, end))), this.executor);
+  }
+
+  private static long seedOf(final Coordinate start, final Coordinate end) {
+    long seed = PopulationModel.seedOf(Double.doubleToLongBits(start.x), Double.doubleToLongBits(start.y));
+    seed = PopulationModel.seedOf(seed, Double.doubleToLongBits(end.x));
+    return PopulationModel.seedOf(seed, Double.doubleToLongBits(end.y));
+  }
+
+  /**
+   *
+   * @param startLat
+   * @param startLng
+   * @param endLat
+   * @param endLng
+   * @param random
+   * @return the positions of the route including origin and destination
+   */
+  public CoordinateBuffer createRoute(final double startLat, final double startLng, final double endLat,
+      final double endLng, final Random random) {
+
+    final double metersPerDegreeLat = GeoDistance.METERS_PER_DEGREE;
+    final double metersPerDegreeLng = Math.max(1e-9,
+        GeoDistance.METERS_PER_DEGREE * Math.cos(Math.toRadians((startLat + endLat) / 2)));
+
+    final double block = Math.max(1, this.blockLength);
+    final int blocksNorth = (int) Math.round(Math.abs(endLat - startLat) * metersPerDegreeLat / block);
+    final int blocksEast = (int) Math.round(Math.abs(endLng - startLng) * metersPerDegreeLng / block);
+
+    final double stepLat = blocksNorth == 0 ? 0 : (endLat - startLat) / blocksNorth;
+    final double stepLng = blocksEast == 0 ? 0 : (endLng - startLng) / blocksEast;
+    final double jitterLat = Math.max(0, this.jitter) / metersPerDegreeLat;
+    final double jitterLng = Math.max(0, this.jitter) / metersPerDegreeLng;
+
+    final double minLat = Math.min(startLat, endLat);
+    final double maxLat = Math.max(startLat, endLat);
+    final double minLng = Math.min(startLng, endLng);
+    final double maxLng = Math.max(startLng, endLng);
+
+    final CoordinateBuffer route = new CoordinateBuffer(blocksNorth + blocksEast + 2);
+    route.add(startLat, startLng, 0);
+
+    int north = 0;
+    int east = 0;
+    boolean goingNorth = random.nextBoolean();
+
+    while (north + east < blocksNorth + blocksEast - 1) {
+
+      if (north == blocksNorth) {
+        goingNorth = false;
+      } else if (east == blocksEast) {
+        goingNorth = true;
+      } else if (random.nextDouble() >= this.straightness) {
+        // Turn towards the destination, preferring the direction with more blocks left
+        goingNorth = random.nextInt(blocksNorth - north + blocksEast - east) < blocksNorth - north;
+      }
+
+      if (goingNorth) {
+        north++;
+      } else {
+        east++;
+      }
+
+      final double lat = startLat + north * stepLat + (2 * random.nextDouble() - 1) * jitterLat;
+      final double lng = startLng + east * stepLng + (2 * random.nextDouble() - 1) * jitterLng;
+      route.add(Math.max(minLat, Math.min(maxLat, lat)), Math.max(minLng, Math.min(maxLng, lng)), 0);
+    }
+
+    route.add(endLat, endLng, 0);
+    return route;
+  }
+}
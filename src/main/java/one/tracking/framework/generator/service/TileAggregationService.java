@@ -0,0 +1,409 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import one.tracking.framework.generator.index.SpatialEventIndex;
+import one.tracking.framework.generator.repo.SpatialEventRepository;
+
+/**
+ * Aggregates events for displaying them on a map. Events are counted per cell of a regular grid within
+ * each web mercator tile of the requested zoom level, so the amount of aggregates depends on the size
+ * of the viewport only.
+ * <p>
+ * Aggregates are cached per userId filter, zoom level and tile. Whenever {@link SpatialEventIndex}
+ * reports a modification of the persisted events, only the cached tiles containing its location are
+ * dropped. Modifications are queued and applied by the next aggregation, so persisting events does not
+ * wait for the cache.
+ */
+@Service
+public class TileAggregationService {
+
+  public static final int MAX_ZOOM = 20;
+
+  private static final double MAX_LATITUDE = 85.0511287798;
+
+  /*
+   * Upper bound of tiles aggregated for one viewport, the zoom level is decreased if exceeded.
+   */
+  private static final int MAX_TILES = 64;
+
+  /*
+   * Upper bound of queued modifications, the whole cache is dropped instead if exceeded.
+   */
+  private static final int MAX_MODIFICATIONS = 100000;
+
+  @Autowired
+  private SpatialEventRepository repository;
+
+  @Autowired
+  private SpatialEventIndex index;
+
+  @Autowired
+  private GeometryFactory geometryFactory;
+
+  @Value("${app.ui.tile.grid:8}")
+  private int gridSize;
+
+  @Value("${app.ui.tile.cache.size:4096}")
+  private int cacheSize;
+
+  private Map<TileKey, List<TileCell>> cache;
+
+  /*
+   * The cached keys of all userId filters by zoom level and tile
+   */
+  private final Map<Long, Set<TileKey>> cachedTiles = new HashMap<>();
+
+  /*
+   * The modified tiles of the highest zoom level not applied to the cache yet
+   */
+  private final Queue<Long> modifications = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger modificationCount = new AtomicInteger(0);
+
+  private final AtomicBoolean modificationsDropped = new AtomicBoolean(false);
+
+  /*
+   * The loads of tiles not cached yet, collecting the modified tiles while running
+   */
+  private final List<InFlightLoad> inFlightLoads = new ArrayList<>();
+
+  @PostConstruct
+  private void init() {
+    final int maxEntries = Math.max(0, this.cacheSize);
+    this.cache = new LinkedHashMap<TileKey, List<TileCell>>(16, 0.75f, true) {
+
+      private static final long serialVersionUID = 6143318226212519474L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<TileKey, List<TileCell>> eldest) {
+        if (size() <= maxEntries)
+          return false;
+        uncache(eldest.getKey());
+        return true;
+      }
+    };
+
+    this.index.addChangeListener(this::invalidate);
+  }
+
+  /*
+   * Queues the tile of the highest zoom level containing the given location. Called on the thread
+   * persisting the events.
+   */
+  private void invalidate(final double lng, final double lat) {
+
+    if (this.modificationCount.incrementAndGet() > MAX_MODIFICATIONS) {
+      this.modificationCount.decrementAndGet();
+      this.modificationsDropped.set(true);
+      return;
+    }
+    this.modifications.add(((long) tileX(lng, MAX_ZOOM) << 32) | tileY(lat, MAX_ZOOM));
+  }
+
+  /*
+   * Drops the cached tiles of all zoom levels containing the queued modifications and records them for
+   * the loads in flight. The caller must hold the monitor.
+   */
+  private void applyModifications() {
+
+    if (this.modificationsDropped.getAndSet(false)) {
+      this.cache.clear();
+      this.cachedTiles.clear();
+      this.inFlightLoads.forEach(load -> load.stale = true);
+    }
+
+    final Set<Long> applied = new HashSet<>();
+    Long modification;
+    while ((modification = this.modifications.poll()) != null) {
+
+      this.modificationCount.decrementAndGet();
+      // Events of a route modify the same tiles many times
+      if (!applied.add(modification) || this.cache.isEmpty() && this.inFlightLoads.isEmpty())
+        continue;
+
+      final int x = (int) (modification >>> 32);
+      final int y = (int) (modification & 0xFFFFFFFFL);
+
+      for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+        // The tile of a lower zoom level contains 2 x 2 tiles of the next higher one
+        final long id = tileId(zoom, x >> (MAX_ZOOM - zoom), y >> (MAX_ZOOM - zoom));
+        final Set<TileKey> keys = this.cachedTiles.remove(id);
+        if (keys != null)
+          this.cache.keySet().removeAll(keys);
+        for (final InFlightLoad load : this.inFlightLoads) {
+          if (load.zoom == zoom)
+            load.modifiedTiles.add(id);
+        }
+      }
+    }
+  }
+
+  private void uncache(final TileKey key) {
+    final long id = tileId(key.zoom, key.x, key.y);
+    final Set<TileKey> keys = this.cachedTiles.get(id);
+    if (keys != null && keys.remove(key) && keys.isEmpty())
+      this.cachedTiles.remove(id);
+  }
+
+  /**
+   *
+   * @param zoom the zoom level of the map
+   * @param south
+   * @param west
+   * @param north
+   * @param east
+   * @param userIdContains the userId filter
+   * @return the aggregates of all tiles covering the given bounds, having their centroid within the
+   *         bounds
+   */
+  public List<TileCell> aggregate(final int zoom, final double south, final double west, final double north,
+      final double east, final String userIdContains) {
+
+    final String filter = userIdContains == null ? "" : userIdContains;
+
+    int z = Math.max(0, Math.min(MAX_ZOOM, zoom));
+    while (z > 0 && countTiles(z, south, west, north, east) > MAX_TILES) {
+      z--;
+    }
+
+    final int minX = tileX(west, z);
+    final int maxX = tileX(east, z);
+    final int minY = tileY(north, z);
+    final int maxY = tileY(south, z);
+
+    final Map<TileKey, List<TileCell>> tiles = new HashMap<>();
+    final List<TileKey> missing = new ArrayList<>();
+    final InFlightLoad inFlightLoad = new InFlightLoad(z);
+
+    synchronized (this) {
+      applyModifications();
+      for (int x = minX; x <= maxX; x++) {
+        for (int y = minY; y <= maxY; y++) {
+          final TileKey key = new TileKey(filter, z, x, y);
+          final List<TileCell> cells = this.cache.get(key);
+          if (cells == null) {
+            missing.add(key);
+          } else {
+            tiles.put(key, cells);
+          }
+        }
+      }
+      if (!missing.isEmpty())
+        this.inFlightLoads.add(inFlightLoad);
+    }
+
+    if (!missing.isEmpty()) {
+      try {
+        final Map<TileKey, List<TileCell>> loaded = load(filter, z, missing);
+        synchronized (this) {
+          applyModifications();
+          loaded.forEach((key, cells) -> {
+            final long id = tileId(key.zoom, key.x, key.y);
+            // Otherwise the loaded tile may miss a modification made while loading
+            if (!inFlightLoad.stale && !inFlightLoad.modifiedTiles.contains(id)) {
+              this.cache.put(key, cells);
+              this.cachedTiles.computeIfAbsent(id, k -> new HashSet<>()).add(key);
+            }
+          });
+        }
+        tiles.putAll(loaded);
+      } finally {
+        synchronized (this) {
+          this.inFlightLoads.remove(inFlightLoad);
+        }
+      }
+    }
+
+    final List<TileCell> result = new ArrayList<>();
+    for (final List<TileCell> cells : tiles.values()) {
+      for (final TileCell cell : cells) {
+        if (cell.getLat() >= south && cell.getLat() <= north && cell.getLng() >= west && cell.getLng() <= east)
+          result.add(cell);
+      }
+    }
+    return result;
+  }
+
+  /*
+   * Aggregates the given tiles of the same zoom level with a single query for their bounding box.
+   */
+  private Map<TileKey, List<TileCell>> load(final String filter, final int zoom, final List<TileKey> keys) {
+
+    final int grid = Math.max(1, this.gridSize);
+
+    final Map<TileKey, Accumulator> accumulators = new HashMap<>();
+    int minX = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int minY = Integer.MAX_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    for (final TileKey key : keys) {
+      accumulators.put(key, new Accumulator(grid));
+      minX = Math.min(minX, key.x);
+      maxX = Math.max(maxX, key.x);
+      minY = Math.min(minY, key.y);
+      maxY = Math.max(maxY, key.y);
+    }
+
+    // Locations are stored as lng/lat
+    final Envelope bounds = new Envelope(tileLng(minX, zoom), tileLng(maxX + 1, zoom), tileLat(maxY + 1, zoom),
+        tileLat(minY, zoom));
+
+    final double tiles = 1 << zoom;
+    this.repository.forEachEventWithin(this.geometryFactory.toGeometry(bounds), "%" + filter + "%",
+        (userId, timestamp, location) -> {
+
+          final double lng = location.getX();
+          final double lat = location.getY();
+          final double x = (lng + 180) / 360 * tiles;
+          final double y = mercatorY(lat) * tiles;
+          final int tileX = (int) Math.min(tiles - 1, Math.max(0, Math.floor(x)));
+          final int tileY = (int) Math.min(tiles - 1, Math.max(0, Math.floor(y)));
+
+          final Accumulator accumulator = accumulators.get(new TileKey(filter, zoom, tileX, tileY));
+          if (accumulator == null)
+            return;
+
+          final int cellX = (int) Math.min(grid - 1, Math.max(0, (x - tileX) * grid));
+          final int cellY = (int) Math.min(grid - 1, Math.max(0, (y - tileY) * grid));
+          accumulator.add(cellY * grid + cellX, lat, lng);
+        });
+
+    final Map<TileKey, List<TileCell>> result = new HashMap<>();
+    accumulators.forEach((key, accumulator) -> result.put(key, accumulator.toCells()));
+    return result;
+  }
+
+  private static long countTiles(final int zoom, final double south, final double west, final double north,
+      final double east) {
+    return (long) (tileX(east, zoom) - tileX(west, zoom) + 1) * (tileY(south, zoom) - tileY(north, zoom) + 1);
+  }
+
+  private static long tileId(final int zoom, final int x, final int y) {
+    // x and y are below 2^MAX_ZOOM
+    return ((long) zoom << 56) | ((long) x << 28) | y;
+  }
+
+  private static int tileX(final double lng, final int zoom) {
+    final int tiles = 1 << zoom;
+    return (int) Math.min(tiles - 1, Math.max(0, Math.floor((lng + 180) / 360 * tiles)));
+  }
+
+  private static int tileY(final double lat, final int zoom) {
+    final int tiles = 1 << zoom;
+    return (int) Math.min(tiles - 1, Math.max(0, Math.floor(mercatorY(lat) * tiles)));
+  }
+
+  /*
+   * The web mercator y coordinate within [0, 1] growing southwards.
+   */
+  private static double mercatorY(final double lat) {
+    final double radians = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat)));
+    return (1 - Math.log(Math.tan(radians) + 1 / Math.cos(radians)) / Math.PI) / 2;
+  }
+
+  private static double tileLng(final int x, final int zoom) {
+    return (double) x / (1 << zoom) * 360 - 180;
+  }
+
+  private static double tileLat(final int y, final int zoom) {
+    return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2.0 * y / (1 << zoom)))));
+  }
+
+  private static class TileKey {
+
+    private final String filter;
+    private final int zoom;
+    private final int x;
+    private final int y;
+
+    private TileKey(final String filter, final int zoom, final int x, final int y) {
+      this.filter = filter;
+      this.zoom = zoom;
+      this.x = x;
+      this.y = y;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = this.filter.hashCode();
+      result = 31 * result + this.zoom;
+      result = 31 * result + this.x;
+      result = 31 * result + this.y;
+      return result;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof TileKey))
+        return false;
+      final TileKey other = (TileKey) obj;
+      return this.zoom == other.zoom && this.x == other.x && this.y == other.y
+          && this.filter.equals(other.filter);
+    }
+  }
+
+  private static class InFlightLoad {
+
+    private final int zoom;
+    private final Set<Long> modifiedTiles = new HashSet<>();
+    private boolean stale = false;
+
+    private InFlightLoad(final int zoom) {
+      this.zoom = zoom;
+    }
+  }
+
+  private static class Accumulator {
+
+    private final long[] counts;
+    private final double[] lats;
+    private final double[] lngs;
+
+    private Accumulator(final int grid) {
+      this.counts = new long[grid * grid];
+      this.lats = new double[grid * grid];
+      this.lngs = new double[grid * grid];
+    }
+
+    private void add(final int cell, final double lat, final double lng) {
+      this.counts[cell]++;
+      this.lats[cell] += lat;
+      this.lngs[cell] += lng;
+    }
+
+    private List<TileCell> toCells() {
+      final List<TileCell> cells = new ArrayList<>();
+      for (int i = 0; i < this.counts.length; i++) {
+        if (this.counts[i] > 0) {
+          cells.add(TileCell.builder()
+              .lat(this.lats[i] / this.counts[i])
+              .lng(this.lngs[i] / this.counts[i])
+              .count(this.counts[i])
+              .build());
+        }
+      }
+      return cells;
+    }
+  }
+}
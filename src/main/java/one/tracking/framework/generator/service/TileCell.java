@@ -0,0 +1,32 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Aggregate of the events within one cell of a map tile.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TileCell {
+
+  /**
+   * The latitude of the centroid of the events.
+   */
+  private double lat;
+
+  /**
+   * The longitude of the centroid of the events.
+   */
+  private double lng;
+
+  private long count;
+
+}
@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.storage;
+
+/**
+ * Constants and varint helpers shared by {@link BinarySnapshotWriter} and
+ * {@link BinarySnapshotReader}.
+ * <p>
+ * Layout of a snapshot file:
+ *
+ * <pre>
+ * header:     int magic, byte version, byte precision, long dictionaryOffset, int blockCount
+ * block*:     int length, varint userIndex, varint count,
+ *             count * zigzag varint delta of the epoch seconds,
+ *             count * varint nanos,
+ *             count * zigzag varint delta of the timestamp offsets,
+ *             count * varint version,
+ *             count * zigzag varint delta of the fixed point x ordinates,
+ *             count * zigzag varint delta of the fixed point y ordinates
+ * dictionary: varint userCount, userCount * (varint length, UTF-8 bytes)
+ * </pre>
+ *
+ * All events of a block belong to the same user and are ordered by their timestamp. Deltas start from
+ * 0 within each block.
+ */
+final class BinarySnapshot {
+
+  static final int MAGIC = 0x47505353; // "GPSS"
+
+  static final byte VERSION = 1;
+
+  /**
+   * Decimal digits kept of each ordinate. 7 digits are about 1 cm at the equator.
+   */
+  static final byte PRECISION = 7;
+
+  static final int HEADER_SIZE = 4 + 1 + 1 + 8 + 4;
+
+  static final int DICTIONARY_OFFSET_POSITION = 4 + 1 + 1;
+
+  private BinarySnapshot() {}
+
+  static long zigZag(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  static long unZigZag(final long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  static long multiplier(final int precision) {
+    long multiplier = 1;
+    for (int i = 0; i < precision; i++) {
+      multiplier *= 10;
+    }
+    return multiplier;
+  }
+}
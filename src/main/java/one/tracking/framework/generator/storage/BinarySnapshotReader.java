@@ -0,0 +1,177 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import one.tracking.framework.generator.entity.SpatialEvent;
+
+/**
+ * Reads a binary columnar snapshot written by {@link BinarySnapshotWriter} using memory mapped I/O.
+ * The file is mapped in windows of at most {@link Integer#MAX_VALUE} bytes, each containing complete
+ * blocks only.
+ *
+ * @see BinarySnapshot
+ */
+public class BinarySnapshotReader {
+
+  private static final long MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+  private final GeometryFactory geometryFactory;
+
+  public BinarySnapshotReader(final GeometryFactory geometryFactory) {
+    this.geometryFactory = geometryFactory;
+  }
+
+  /**
+   * Reads all blocks of the given snapshot and passes the contained events block by block to the given
+   * consumer. The events have no id assigned.
+   *
+   * @param file the snapshot file
+   * @param consumer receiving the events of each block
+   * @return the amount of events read
+   * @throws IOException
+   */
+  public long read(final Path file, final Consumer<List<SpatialEvent>> consumer) throws IOException {
+
+    try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+      final long fileSize = channel.size();
+      if (fileSize < BinarySnapshot.HEADER_SIZE)
+        throw new IOException("Invalid snapshot: " + file);
+
+      final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinarySnapshot.HEADER_SIZE);
+      if (header.getInt() != BinarySnapshot.MAGIC)
+        throw new IOException("Invalid snapshot: " + file);
+      if (header.get() != BinarySnapshot.VERSION)
+        throw new IOException("Unsupported snapshot version: " + file);
+
+      final double multiplier = BinarySnapshot.multiplier(header.get());
+      final long dictionaryOffset = header.getLong();
+      final int blockCount = header.getInt();
+
+      if (dictionaryOffset < BinarySnapshot.HEADER_SIZE || dictionaryOffset > fileSize
+          || fileSize - dictionaryOffset > MAX_WINDOW_SIZE)
+        throw new IOException("Invalid snapshot: " + file);
+
+      final String[] userIds = readDictionary(
+          channel.map(FileChannel.MapMode.READ_ONLY, dictionaryOffset, fileSize - dictionaryOffset));
+
+      long count = 0;
+      long position = BinarySnapshot.HEADER_SIZE;
+      long windowStart = position;
+      MappedByteBuffer window = null;
+
+      for (int i = 0; i < blockCount; i++) {
+
+        if (window == null || position + 4 > windowStart + window.limit()) {
+          windowStart = position;
+          window = map(channel, windowStart, dictionaryOffset);
+        }
+
+        final int length = window.getInt((int) (position - windowStart));
+        if (position + 4 + length > dictionaryOffset)
+          throw new IOException("Invalid snapshot: " + file);
+
+        if (position + 4 + length > windowStart + window.limit()) {
+          windowStart = position;
+          window = map(channel, windowStart, dictionaryOffset);
+        }
+
+        window.position((int) (position - windowStart) + 4);
+        final List<SpatialEvent> events = readBlock(window, userIds, multiplier);
+        consumer.accept(events);
+
+        count += events.size();
+        position += 4 + length;
+      }
+
+      return count;
+    }
+  }
+
+  private MappedByteBuffer map(final FileChannel channel, final long start, final long end) throws IOException {
+    return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(end - start, MAX_WINDOW_SIZE));
+  }
+
+  private String[] readDictionary(final ByteBuffer buffer) {
+    final String[] userIds = new String[(int) readVarint(buffer)];
+    for (int i = 0; i < userIds.length; i++) {
+      final byte[] bytes = new byte[(int) readVarint(buffer)];
+      buffer.get(bytes);
+      userIds[i] = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return userIds;
+  }
+
+  private List<SpatialEvent> readBlock(final ByteBuffer buffer, final String[] userIds, final double multiplier) {
+
+    final String userId = userIds[(int) readVarint(buffer)];
+    final int size = (int) readVarint(buffer);
+
+    final long[] seconds = new long[size];
+    final int[] offsets = new int[size];
+
+    long previous = 0;
+    for (int i = 0; i < size; i++) {
+      previous += BinarySnapshot.unZigZag(readVarint(buffer));
+      seconds[i] = previous;
+    }
+
+    final List<SpatialEvent> events = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      events.add(SpatialEvent.builder()
+          .userId(userId)
+          .timestampCreate(Instant.ofEpochSecond(seconds[i], readVarint(buffer)))
+          .build());
+    }
+
+    previous = 0;
+    for (int i = 0; i < size; i++) {
+      previous += BinarySnapshot.unZigZag(readVarint(buffer));
+      offsets[i] = (int) previous;
+    }
+    for (int i = 0; i < size; i++) {
+      events.get(i).setTimestampOffset(offsets[i]);
+      events.get(i).setVersion((int) readVarint(buffer));
+    }
+
+    final double[] xs = new double[size];
+    previous = 0;
+    for (int i = 0; i < size; i++) {
+      previous += BinarySnapshot.unZigZag(readVarint(buffer));
+      xs[i] = previous / multiplier;
+    }
+    previous = 0;
+    for (int i = 0; i < size; i++) {
+      previous += BinarySnapshot.unZigZag(readVarint(buffer));
+      events.get(i).setLocation(this.geometryFactory.createPoint(new Coordinate(xs[i], previous / multiplier)));
+    }
+
+    return events;
+  }
+
+  private static long readVarint(final ByteBuffer buffer) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+}
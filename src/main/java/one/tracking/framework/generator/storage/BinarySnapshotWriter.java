@@ -0,0 +1,264 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.locationtech.jts.geom.Coordinate;
+import one.tracking.framework.generator.entity.SpatialEvent;
+
+/**
+ * Writes {@link SpatialEvent}s to a binary columnar snapshot. Events must be passed ordered by userId
+ * and timestamp. Consecutive events of the same user are collected into blocks of at most the given
+ * size, so memory usage does not depend on the amount of events written.
+ *
+ * @see BinarySnapshot
+ */
+public class BinarySnapshotWriter implements Closeable {
+
+  private final FileChannel channel;
+  private final OutputStream out;
+  private final int maxBlockSize;
+  private final double multiplier;
+
+  private final Map<String, Integer> dictionary = new HashMap<>();
+  private final List<String> userIds = new ArrayList<>();
+
+  private final long[] seconds;
+  private final int[] nanos;
+  private final int[] offsets;
+  private final int[] versions;
+  private final long[] xs;
+  private final long[] ys;
+
+  private final BlockBuffer block = new BlockBuffer();
+
+  private int userIndex = -1;
+  private int size = 0;
+  private int blockCount = 0;
+  private long position = 0;
+
+  /**
+   *
+   * @param file the file to write to. Existing content will be replaced.
+   * @param maxBlockSize the maximum amount of events per block
+   * @throws IOException
+   */
+  public BinarySnapshotWriter(final Path file, final int maxBlockSize) throws IOException {
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    this.out = new BufferedOutputStream(Channels.newOutputStream(this.channel), 1 << 16);
+    this.maxBlockSize = Math.max(1, maxBlockSize);
+    this.multiplier = BinarySnapshot.multiplier(BinarySnapshot.PRECISION);
+
+    this.seconds = new long[this.maxBlockSize];
+    this.nanos = new int[this.maxBlockSize];
+    this.offsets = new int[this.maxBlockSize];
+    this.versions = new int[this.maxBlockSize];
+    this.xs = new long[this.maxBlockSize];
+    this.ys = new long[this.maxBlockSize];
+
+    writeHeader();
+  }
+
+  /**
+   *
+   * @param event the next event ordered by userId and timestamp
+   * @throws IOException
+   */
+  public void write(final SpatialEvent event) throws IOException {
+
+    final int index = getUserIndex(event.getUserId());
+
+    if (this.size > 0 && (index != this.userIndex || this.size == this.maxBlockSize))
+      flushBlock();
+
+    this.userIndex = index;
+
+    final Coordinate coordinate = event.getLocation().getCoordinate();
+
+    this.seconds[this.size] = event.getTimestampCreate().getEpochSecond();
+    this.nanos[this.size] = event.getTimestampCreate().getNano();
+    this.offsets[this.size] = event.getTimestampOffset();
+    this.versions[this.size] = event.getVersion();
+    this.xs[this.size] = Math.round(coordinate.x * this.multiplier);
+    this.ys[this.size] = Math.round(coordinate.y * this.multiplier);
+    this.size++;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (this.size > 0)
+        flushBlock();
+
+      final long dictionaryOffset = this.position;
+      writeDictionary();
+      this.out.flush();
+
+      final ByteBuffer patch = ByteBuffer.allocate(8 + 4);
+      patch.putLong(dictionaryOffset);
+      patch.putInt(this.blockCount);
+      patch.flip();
+      long patchPosition = BinarySnapshot.DICTIONARY_OFFSET_POSITION;
+      while (patch.hasRemaining()) {
+        patchPosition += this.channel.write(patch, patchPosition);
+      }
+      this.channel.force(false);
+    } finally {
+      this.out.close();
+    }
+  }
+
+  private int getUserIndex(final String userId) {
+    Integer index = this.dictionary.get(userId);
+    if (index == null) {
+      index = this.userIds.size();
+      this.userIds.add(userId);
+      this.dictionary.put(userId, index);
+    }
+    return index;
+  }
+
+  private void writeHeader() throws IOException {
+    this.block.clear();
+    this.block.writeInt(BinarySnapshot.MAGIC);
+    this.block.writeByte(BinarySnapshot.VERSION);
+    this.block.writeByte(BinarySnapshot.PRECISION);
+    this.block.writeLong(0); // dictionary offset, patched on close
+    this.block.writeInt(0); // block count, patched on close
+    writeBuffer();
+  }
+
+  private void flushBlock() throws IOException {
+
+    this.block.clear();
+    this.block.writeInt(0); // length, set below
+    this.block.writeVarint(this.userIndex);
+    this.block.writeVarint(this.size);
+
+    long previous = 0;
+    for (int i = 0; i < this.size; i++) {
+      this.block.writeVarint(BinarySnapshot.zigZag(this.seconds[i] - previous));
+      previous = this.seconds[i];
+    }
+    for (int i = 0; i < this.size; i++) {
+      this.block.writeVarint(this.nanos[i]);
+    }
+    previous = 0;
+    for (int i = 0; i < this.size; i++) {
+      this.block.writeVarint(BinarySnapshot.zigZag(this.offsets[i] - previous));
+      previous = this.offsets[i];
+    }
+    for (int i = 0; i < this.size; i++) {
+      this.block.writeVarint(this.versions[i] & 0xFFFFFFFFL);
+    }
+    previous = 0;
+    for (int i = 0; i < this.size; i++) {
+      this.block.writeVarint(BinarySnapshot.zigZag(this.xs[i] - previous));
+      previous = this.xs[i];
+    }
+    previous = 0;
+    for (int i = 0; i < this.size; i++) {
+      this.block.writeVarint(BinarySnapshot.zigZag(this.ys[i] - previous));
+      previous = this.ys[i];
+    }
+
+    this.block.setInt(0, this.block.length() - 4);
+    writeBuffer();
+
+    this.blockCount++;
+    this.size = 0;
+  }
+
+  private void writeDictionary() throws IOException {
+    this.block.clear();
+    this.block.writeVarint(this.userIds.size());
+    for (final String userId : this.userIds) {
+      final byte[] bytes = userId.getBytes(StandardCharsets.UTF_8);
+      this.block.writeVarint(bytes.length);
+      this.block.write(bytes);
+    }
+    writeBuffer();
+  }
+
+  private void writeBuffer() throws IOException {
+    this.out.write(this.block.bytes, 0, this.block.length);
+    this.position += this.block.length;
+  }
+
+  /*
+   * Growable big endian byte buffer reused for every block.
+   */
+  private static class BlockBuffer {
+
+    private byte[] bytes = new byte[1 << 12];
+    private int length = 0;
+
+    private void clear() {
+      this.length = 0;
+    }
+
+    private int length() {
+      return this.length;
+    }
+
+    private void ensureCapacity(final int additional) {
+      if (this.length + additional > this.bytes.length) {
+        this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.length + additional));
+      }
+    }
+
+    private void writeByte(final int value) {
+      ensureCapacity(1);
+      this.bytes[this.length++] = (byte) value;
+    }
+
+    private void writeInt(final int value) {
+      ensureCapacity(4);
+      setInt(this.length, value);
+      this.length += 4;
+    }
+
+    private void setInt(final int index, final int value) {
+      this.bytes[index] = (byte) (value >>> 24);
+      this.bytes[index + 1] = (byte) (value >>> 16);
+      this.bytes[index + 2] = (byte) (value >>> 8);
+      this.bytes[index + 3] = (byte) value;
+    }
+
+    private void writeLong(final long value) {
+      writeInt((int) (value >>> 32));
+      writeInt((int) value);
+    }
+
+    private void writeVarint(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+        this.bytes[this.length++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      this.bytes[this.length++] = (byte) value;
+    }
+
+    private void write(final byte[] value) {
+      ensureCapacity(value.length);
+      System.arraycopy(value, 0, this.bytes, this.length, value.length);
+      this.length += value.length;
+    }
+  }
+}
@@ -0,0 +1,21 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.storage;
+
+/**
+ * Supported formats of the file the database content is stored to on shutdown and loaded from on
+ * startup.
+ */
+public enum SnapshotFormat {
+
+  /**
+   * One event per line with the location as WKT point.
+   */
+  CSV,
+
+  /**
+   * Compact columnar format written by {@link BinarySnapshotWriter}.
+   */
+  BINARY;
+}
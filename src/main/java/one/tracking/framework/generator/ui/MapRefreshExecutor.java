@@ -0,0 +1,50 @@
+package one.tracking.framework.generator.ui;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shared pool of background threads loading map content for all UIs. Tasks are scheduled with a delay,
+ * so a UI can debounce reloads by cancelling the pending task before scheduling the next one.
+ */
+@Component
+public class MapRefreshExecutor implements DisposableBean {
+
+  @Value("${app.ui.refresh.threads:2}")
+  private int threads;
+
+  private ScheduledThreadPoolExecutor executor;
+
+  @PostConstruct
+  private void init() {
+    final AtomicInteger threadCount = new AtomicInteger(0);
+    this.executor = new ScheduledThreadPoolExecutor(Math.max(1, this.threads), runnable -> {
+      final Thread thread = new Thread(runnable, "map-refresh-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    // Do not keep debounced reloads in the queue until their delay expired
+    this.executor.setRemoveOnCancelPolicy(true);
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    this.executor.shutdownNow();
+  }
+
+  /**
+   *
+   * @param task
+   * @param delayMillis
+   * @return the future of the task, which may be cancelled before running
+   */
+  public ScheduledFuture<?> schedule(final Runnable task, final long delayMillis) {
+    return this.executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+  }
+}
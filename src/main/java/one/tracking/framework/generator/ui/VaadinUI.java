@@ -2,35 +2,54 @@ package one.tracking.framework.generator.ui;
 
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LinearRing;
 import org.locationtech.jts.geom.Polygon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.vaadin.addon.leaflet.AbstractLeafletLayer;
 import org.vaadin.addon.leaflet.LCircleMarker;
 import org.vaadin.addon.leaflet.LLayerGroup;
 import org.vaadin.addon.leaflet.LMap;
+import org.vaadin.addon.leaflet.LMarker;
 import org.vaadin.addon.leaflet.LOpenStreetMapLayer;
 import org.vaadin.addon.leaflet.LTileLayer;
 import org.vaadin.addon.leaflet.shared.Bounds;
 import org.vaadin.addon.leaflet.shared.Point;
 import org.vaadin.viritin.grid.MGrid;
-import org.vaadin.viritin.label.MLabel;
-import org.vaadin.viritin.layouts.MHorizontalLayout;
 import org.vaadin.viritin.layouts.MVerticalLayout;
+import com.vaadin.annotations.Push;
 import com.vaadin.annotations.StyleSheet;
 import com.vaadin.annotations.Theme;
+import com.vaadin.data.provider.CallbackDataProvider;
+import com.vaadin.data.provider.DataProvider;
+import com.vaadin.data.provider.QuerySortOrder;
 import com.vaadin.server.VaadinRequest;
+import com.vaadin.shared.data.sort.SortDirection;
 import com.vaadin.spring.annotation.SpringUI;
 import com.vaadin.ui.Alignment;
 import com.vaadin.ui.UI;
 import com.vaadin.ui.Window;
 import one.tracking.framework.generator.entity.SpatialEvent;
 import one.tracking.framework.generator.repo.SpatialEventRepository;
+import one.tracking.framework.generator.service.TileAggregationService;
+import one.tracking.framework.generator.service.TileCell;
 import one.tracking.framework.generator.ui.FilterPanel.FilterPanelObserver;
+import one.tracking.framework.generator.util.GeoDistance;
+import one.tracking.framework.generator.util.TrajectorySimplifier;
 
 /**
  * @author mstahv
@@ -38,25 +57,80 @@ import one.tracking.framework.generator.ui.FilterPanel.FilterPanelObserver;
 @Theme("valo")
 @StyleSheet("vaadin://style.css")
 @SpringUI
+@Push
 public class VaadinUI extends UI implements Window.CloseListener, FilterPanelObserver {
 
   private static final long serialVersionUID = 3326102015975811662L;
 
+  private static final Logger LOG = LoggerFactory.getLogger(VaadinUI.class);
+
+  private static final int CLUSTER_ICON_SIZE = 32;
+
+  /*
+   * Amount of markers pushed to the client at once while loading single events
+   */
+  private static final int MARKER_BATCH_SIZE = 200;
+
+  /*
+   * Size of a web mercator tile in pixels
+   */
+  private static final int TILE_SIZE = 256;
+
   private final SpatialEventRepository repo;
 
   private final Envelope envelope;
 
-  public VaadinUI(final SpatialEventRepository repo, final Envelope envelope) {
+  private final TileAggregationService tileAggregationService;
+
+  private final int markerThreshold;
+
+  private final MapRefreshExecutor refreshExecutor;
+
+  private final long refreshDelay;
+
+  private final int simplifyZoom;
+
+  private final double simplifyTolerance;
+
+  public VaadinUI(final SpatialEventRepository repo, final Envelope envelope,
+      final TileAggregationService tileAggregationService,
+      @Value("${app.ui.marker.threshold:1000}") final int markerThreshold,
+      final MapRefreshExecutor refreshExecutor,
+      @Value("${app.ui.refresh.delay:300}") final long refreshDelay,
+      @Value("${app.ui.simplify.zoom:15}") final int simplifyZoom,
+      @Value("${app.ui.simplify.tolerance:2}") final double simplifyTolerance) {
     this.repo = repo;
     this.envelope = envelope;
+    this.tileAggregationService = tileAggregationService;
+    this.markerThreshold = markerThreshold;
+    this.refreshExecutor = refreshExecutor;
+    this.refreshDelay = refreshDelay;
+    this.simplifyZoom = simplifyZoom;
+    this.simplifyTolerance = simplifyTolerance;
   }
 
   private MGrid<SpatialEvent> table;
   private final LMap map = new LMap();
   private final LTileLayer osmTiles = new LOpenStreetMapLayer();
+  private final LLayerGroup eventLayer = new LLayerGroup();
 
   private final FilterPanel filterPanel = new FilterPanel();
 
+  private CallbackDataProvider<SpatialEvent, Void> dataProvider;
+
+  /*
+   * The filter of the events shown in the table, updated on every reload
+   */
+  private Polygon tableBounds;
+  private String tableFilter;
+
+  /*
+   * Increased for every requested reload. A reload stops as soon as it is not the latest one anymore.
+   */
+  private final AtomicLong reloadGeneration = new AtomicLong(0);
+
+  private transient Future<?> pendingReload;
+
   @Override
   protected void init(final VaadinRequest request) {
 
@@ -71,17 +145,21 @@ public class VaadinUI extends UI implements Window.CloseListener, FilterPanelObs
     this.table.setHeight("200px");
     this.table.addStyleName("mytable");
 
-    this.table.addComponentColumn(spatialEvent -> {
+    this.table.addColumn(spatialEvent -> {
       final OffsetDateTime ts = OffsetDateTime.ofInstant(spatialEvent.getTimestampCreate(),
           ZoneOffset.ofTotalSeconds(spatialEvent.getTimestampOffset()));
-      return new MHorizontalLayout(new MLabel(ts.toString()));
-    }).setCaption("Timestamp");
+      return ts.toString();
+    }).setCaption("Timestamp").setSortProperty("timestampCreate");
 
-    this.table.addComponentColumn(spatialEvent -> {
-      return new MHorizontalLayout(
-          new MLabel(
-              spatialEvent.getLocation().getCoordinate().y + " " + spatialEvent.getLocation().getCoordinate().x));
-    }).setCaption("Location");
+    this.table.addColumn(spatialEvent -> {
+      return spatialEvent.getLocation().getCoordinate().y + " " + spatialEvent.getLocation().getCoordinate().x;
+    }).setCaption("Location").setSortable(false);
+
+    /* Fetch only the rows requested by the table */
+    this.dataProvider = DataProvider.fromCallbacks(
+        query -> fetchEvents(query.getSortOrders(), query.getOffset(), query.getLimit()),
+        query -> countEvents());
+    this.table.setDataProvider(this.dataProvider);
 
     // this.table.addComponentColumn(spatialEvent -> {
     // return new MHorizontalLayout(
@@ -94,6 +172,9 @@ public class VaadinUI extends UI implements Window.CloseListener, FilterPanelObs
     // }).withStyleName(ValoTheme.BUTTON_BORDERLESS));
     // }).setCaption("Actions");
 
+    this.map.addBaseLayer(this.osmTiles, "OSM");
+    this.map.addLayer(this.eventLayer);
+
     loadEvents(this.filterPanel.isOnlyOnMap(), this.filterPanel.getTitle());
 
     this.osmTiles.setAttributionString("© OpenStreetMap Contributors");
@@ -120,50 +201,221 @@ public class VaadinUI extends UI implements Window.CloseListener, FilterPanelObs
 
   }
 
+  /*
+   * Schedules a reload of the viewport after the debounce delay and cancels the pending one. A running
+   * reload is not interrupted, as interrupting a JDBC call may close the connection, but stops at its
+   * next check of the generation. Must be called holding the session lock.
+   */
   private void loadEvents(final boolean onlyInViewport, final String userIdContains) {
 
-    List<SpatialEvent> events;
-    if (this.map.getBounds() != null) {
-      final Polygon polygon = toPolygon(this.map.getBounds());
-      events = this.repo.findAllWithin(polygon, "%" + userIdContains + "%");
-    } else {
-      events = this.repo.findAll();
-    }
+    final long generation = this.reloadGeneration.incrementAndGet();
+    if (this.pendingReload != null)
+      this.pendingReload.cancel(false);
 
-    /* Populate table... */
-    this.table.setRows(events);
+    final Bounds bounds = getViewport();
+    final int zoom = getZoom(bounds);
 
-    /* ... and map */
-    this.map.removeAllComponents();
-    this.map.addBaseLayer(this.osmTiles, "OSM");
+    this.pendingReload = this.refreshExecutor.schedule(() -> {
+      try {
+        reload(generation, bounds, zoom, onlyInViewport, userIdContains);
+      } catch (final CancellationException e) {
+        // superseded by a newer reload
+      } catch (final RuntimeException e) {
+        LOG.error("Loading the events of the viewport failed.", e);
+      }
+    }, this.refreshDelay);
+  }
+
+  /*
+   * Runs in a background thread and pushes its results to the client incrementally.
+   */
+  private void reload(final long generation, final Bounds bounds, final int zoom, final boolean onlyInViewport,
+      final String userIdContains) {
+
+    final List<TileCell> cells = this.tileAggregationService.aggregate(zoom,
+        bounds.getSouthWestLat(), bounds.getSouthWestLon(), bounds.getNorthEastLat(), bounds.getNorthEastLon(),
+        userIdContains);
+    final long count = cells.stream().mapToLong(TileCell::getCount).sum();
+
+    final Polygon polygon = toPolygon(bounds);
+    final String filter = "%" + userIdContains + "%";
+
+    update(generation, () -> {
+      /* Populate table... */
+      this.tableBounds = polygon;
+      this.tableFilter = filter;
+      this.dataProvider.refreshAll();
+
+      /* ... and map */
+      this.eventLayer.removeAllComponents();
+    });
+
+    if (count <= this.markerThreshold && zoom < this.simplifyZoom) {
+
+      /* Far zoomed out, show the simplified track of each user */
+      final double tolerance = this.simplifyTolerance * getMetersPerPixel(zoom,
+          (bounds.getSouthWestLat() + bounds.getNorthEastLat()) / 2);
+
+      final Map<String, List<TrackPoint>> tracks = new HashMap<>();
+      this.repo.forEachEventWithin(polygon, filter, (userId, timestamp, location) -> {
+
+        if (isStale(generation))
+          throw new CancellationException();
+
+        tracks.computeIfAbsent(userId, k -> new ArrayList<>())
+            .add(new TrackPoint(timestamp.toEpochMilli(), location.getY(), location.getX()));
+      });
+
+      final List<LCircleMarker> batch = new ArrayList<>(MARKER_BATCH_SIZE);
+
+      for (final Map.Entry<String, List<TrackPoint>> track : tracks.entrySet()) {
+
+        final List<TrackPoint> points = track.getValue();
+        points.sort(Comparator.comparingLong(point -> point.time));
+
+        final double[] lats = new double[points.size()];
+        final double[] lngs = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+          lats[i] = points.get(i).lat;
+          lngs[i] = points.get(i).lng;
+        }
+
+        for (final int index : TrajectorySimplifier.simplify(lats, lngs, points.size(), tolerance)) {
+
+          if (isStale(generation))
+            throw new CancellationException();
+
+          batch.add(createMarker(track.getKey(), lats[index], lngs[index]));
+
+          if (batch.size() == MARKER_BATCH_SIZE) {
+            addMarkers(generation, new ArrayList<>(batch));
+            batch.clear();
+          }
+        }
+      }
+
+      addMarkers(generation, batch);
+
+    } else if (count <= this.markerThreshold) {
+
+      final List<LCircleMarker> batch = new ArrayList<>(MARKER_BATCH_SIZE);
+
+      this.repo.forEachEventWithin(polygon, filter, (userId, timestamp, location) -> {
+
+        if (isStale(generation))
+          throw new CancellationException();
 
-    final Map<String, LLayerGroup> groups = new HashMap<>();
+        batch.add(createMarker(userId, location.getY(), location.getX()));
 
-    for (final SpatialEvent spatialEvent : events) {
+        if (batch.size() == MARKER_BATCH_SIZE) {
+          addMarkers(generation, new ArrayList<>(batch));
+          batch.clear();
+        }
+      });
 
-      final LCircleMarker lMarker = new LCircleMarker(
-          spatialEvent.getLocation().getY(),
-          spatialEvent.getLocation().getX(),
-          2);
-      lMarker.setColor(getColor(spatialEvent.getUserId()));
-      lMarker.setWidth(1, Unit.POINTS);
-      lMarker.setOpacity(.5);
+      addMarkers(generation, batch);
 
-      LLayerGroup group = groups.get(spatialEvent.getUserId());
-      if (group == null) {
-        group = new LLayerGroup();
+    } else {
+
+      /* Too many events for single markers, show the amount per cell instead */
+      final List<LMarker> markers = new ArrayList<>(cells.size());
+      for (final TileCell cell : cells) {
+
+        final LMarker marker = new LMarker(cell.getLat(), cell.getLng());
+        marker.setDivIcon(Long.toString(cell.getCount()));
+        marker.setIconSize(new Point(CLUSTER_ICON_SIZE, CLUSTER_ICON_SIZE));
+        marker.setIconAnchor(new Point(CLUSTER_ICON_SIZE / 2, CLUSTER_ICON_SIZE / 2));
+        marker.setStyleName("event-cluster");
+        markers.add(marker);
       }
 
-      group.addComponent(lMarker);
-      groups.put(spatialEvent.getUserId(), group);
+      addMarkers(generation, markers);
+    }
 
+    if (!onlyInViewport) {
+      update(generation, () -> this.map.zoomToContent());
     }
+  }
+
+  private LCircleMarker createMarker(final String userId, final double lat, final double lng) {
+    final LCircleMarker lMarker = new LCircleMarker(lat, lng, 2);
+    lMarker.setColor(getColor(userId));
+    lMarker.setWidth(1, Unit.POINTS);
+    lMarker.setOpacity(.5);
+    return lMarker;
+  }
+
+  private void addMarkers(final long generation, final List<? extends AbstractLeafletLayer> markers) {
+    if (!markers.isEmpty())
+      update(generation, () -> markers.forEach(this.eventLayer::addComponent));
+  }
+
+  /*
+   * Applies the update holding the session lock unless a newer reload has been requested meanwhile.
+   */
+  private void update(final long generation, final Runnable update) {
+    access(() -> {
+      if (!isStale(generation))
+        update.run();
+    });
+  }
+
+  private boolean isStale(final long generation) {
+    return generation != this.reloadGeneration.get() || Thread.currentThread().isInterrupted();
+  }
+
+  private Stream<SpatialEvent> fetchEvents(final List<QuerySortOrder> sortOrders, final int offset,
+      final int limit) {
 
-    groups.values().forEach(c -> this.map.addLayer(c));
+    if (this.tableBounds == null)
+      return Stream.empty();
 
-    if (!this.filterPanel.isOnlyOnMap()) {
-      this.map.zoomToContent();
+    final List<Sort.Order> orders = new ArrayList<>();
+    for (final QuerySortOrder sortOrder : sortOrders) {
+      orders.add(sortOrder.getDirection() == SortDirection.ASCENDING
+          ? Sort.Order.asc(sortOrder.getSorted())
+          : Sort.Order.desc(sortOrder.getSorted()));
     }
+
+    return this.repo.findSliceWithin(this.tableBounds, this.tableFilter, Sort.by(orders), offset, limit).stream();
+  }
+
+  private int countEvents() {
+
+    if (this.tableBounds == null)
+      return 0;
+
+    return (int) Math.min(Integer.MAX_VALUE, this.repo.countAllWithin(this.tableBounds, this.tableFilter));
+  }
+
+  /*
+   * The bounds of the map or of the configured envelope as long as the client did not report them yet.
+   */
+  private Bounds getViewport() {
+    if (this.map.getBounds() != null)
+      return this.map.getBounds();
+    return new Bounds(
+        new Point(this.envelope.getMinX(), this.envelope.getMinY()),
+        new Point(this.envelope.getMaxX(), this.envelope.getMaxY()));
+  }
+
+  private int getZoom(final Bounds bounds) {
+    final Double zoom = this.map.getZoom();
+    if (zoom != null)
+      return (int) Math.round(zoom);
+
+    // Estimate the zoom level assuming the map is about four tiles wide
+    final double span = Math.max(1e-9, bounds.getNorthEastLon() - bounds.getSouthWestLon());
+    final double estimate = Math.floor(Math.log(4 * 360 / span) / Math.log(2));
+    return (int) Math.min(TileAggregationService.MAX_ZOOM, Math.max(0, estimate));
+  }
+
+  /*
+   * The length of one pixel of the map in meters at the given zoom level and latitude.
+   */
+  private static double getMetersPerPixel(final int zoom, final double lat) {
+    return 2 * Math.PI * GeoDistance.EARTH_RADIUS_METERS * Math.cos(Math.toRadians(lat))
+        / ((double) TILE_SIZE * (1L << zoom));
   }
 
   private Polygon toPolygon(final Bounds bounds) {
@@ -185,6 +437,14 @@ public class VaadinUI extends UI implements Window.CloseListener, FilterPanelObs
     return "#" + Integer.toHexString(userId.hashCode()).substring(0, 6);
   }
 
+  @Override
+  public void detach() {
+    this.reloadGeneration.incrementAndGet();
+    if (this.pendingReload != null)
+      this.pendingReload.cancel(false);
+    super.detach();
+  }
+
   @Override
   public void addWindow(final Window window) throws IllegalArgumentException,
       NullPointerException {
@@ -203,4 +463,16 @@ public class VaadinUI extends UI implements Window.CloseListener, FilterPanelObs
     loadEvents(this.filterPanel.isOnlyOnMap(), this.filterPanel.getTitle());
   }
 
+  private static class TrackPoint {
+
+    private final long time;
+    private final double lat;
+    private final double lng;
+
+    private TrackPoint(final long time, final double lat, final double lng) {
+      this.time = time;
+      this.lat = lat;
+      this.lng = lng;
+    }
+  }
 }
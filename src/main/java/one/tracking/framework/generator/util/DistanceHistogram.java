@@ -0,0 +1,167 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.util;
+
+/**
+ * Histogram of non-negative values computed in a single pass with constant memory. Values are counted
+ * in logarithmic buckets, so percentiles are approximated with a bounded relative error regardless of
+ * the range of the values. Count, minimum, maximum and mean are exact.
+ * <p>
+ * Not thread safe.
+ */
+public class DistanceHistogram {
+
+  /*
+   * Values below are counted as zero, values above are counted into the last bucket.
+   */
+  private static final double MIN_VALUE = 1e-12;
+  private static final double MAX_VALUE = 1e12;
+
+  private final double gamma;
+  private final double logGamma;
+  private final int minIndex;
+  private final long[] buckets;
+
+  private long zeroCount = 0;
+  private long count = 0;
+  private double sum = 0;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+
+  /**
+   *
+   * @param relativeError the maximum relative error of approximated percentiles, e.g. 0.01 for 1%
+   */
+  public DistanceHistogram(final double relativeError) {
+    if (relativeError <= 0 || relativeError >= 1)
+      throw new IllegalArgumentException("Relative error must be within (0, 1)");
+
+    // Every value of a bucket [g^i, g^(i+1)) is within the relative error of 2 * g^(i+1) / (g + 1)
+    this.gamma = (1 + relativeError) / (1 - relativeError);
+    this.logGamma = Math.log(this.gamma);
+    this.minIndex = (int) Math.floor(Math.log(MIN_VALUE) / this.logGamma);
+    final int maxIndex = (int) Math.floor(Math.log(MAX_VALUE) / this.logGamma);
+    this.buckets = new long[maxIndex - this.minIndex + 1];
+  }
+
+  /**
+   *
+   * @param value a non-negative value. Negative values and NaN are ignored.
+   */
+  public void add(final double value) {
+
+    if (!(value >= 0))
+      return;
+
+    if (this.count == 0) {
+      this.min = value;
+      this.max = value;
+    } else if (value < this.min) {
+      this.min = value;
+    } else if (value > this.max) {
+      this.max = value;
+    }
+    this.count++;
+    this.sum += value;
+
+    if (value < MIN_VALUE) {
+      this.zeroCount++;
+    } else {
+      this.buckets[bucketOf(value)]++;
+    }
+  }
+
+  public long getCount() {
+    return this.count;
+  }
+
+  /**
+   *
+   * @return the smallest value or NaN if empty
+   */
+  public double getMin() {
+    return this.min;
+  }
+
+  /**
+   *
+   * @return the largest value or NaN if empty
+   */
+  public double getMax() {
+    return this.max;
+  }
+
+  /**
+   *
+   * @return the arithmetic mean or NaN if empty
+   */
+  public double getMean() {
+    return this.count == 0 ? Double.NaN : this.sum / this.count;
+  }
+
+  /**
+   *
+   * @param percentile the percentile within [0, 100]
+   * @return the approximated value at the given percentile or NaN if empty
+   */
+  public double getPercentile(final double percentile) {
+
+    if (this.count == 0)
+      return Double.NaN;
+
+    final long rank = (long) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100.0 * this.count);
+
+    long cumulative = this.zeroCount;
+    if (rank <= cumulative)
+      return this.min;
+
+    for (int i = 0; i < this.buckets.length; i++) {
+      cumulative += this.buckets[i];
+      if (cumulative >= rank)
+        return clamp(valueOf(i));
+    }
+    return this.max;
+  }
+
+  /**
+   * Distributes the counted values into equal width bins between the minimum and the maximum. Each
+   * logarithmic bucket is assigned to the bin containing its representative value.
+   *
+   * @param bins the amount of bins. Minimum: 1
+   * @return the counts per bin. Bin <code>i</code> starts at <code>min + i * (max - min) / bins</code>.
+   */
+  public long[] toBins(final int bins) {
+
+    final long[] result = new long[Math.max(1, bins)];
+    if (this.count == 0)
+      return result;
+
+    result[binOf(this.min, result.length)] += this.zeroCount;
+    for (int i = 0; i < this.buckets.length; i++) {
+      if (this.buckets[i] > 0)
+        result[binOf(clamp(valueOf(i)), result.length)] += this.buckets[i];
+    }
+    return result;
+  }
+
+  private int binOf(final double value, final int bins) {
+    final double width = (this.max - this.min) / bins;
+    if (width <= 0)
+      return 0;
+    return (int) Math.min(bins - 1, Math.max(0, (value - this.min) / width));
+  }
+
+  private int bucketOf(final double value) {
+    final int index = (int) Math.floor(Math.log(Math.min(value, MAX_VALUE)) / this.logGamma) - this.minIndex;
+    return Math.max(0, Math.min(this.buckets.length - 1, index));
+  }
+
+  private double valueOf(final int bucket) {
+    return 2 * Math.exp((bucket + this.minIndex + 1) * this.logGamma) / (this.gamma + 1);
+  }
+
+  private double clamp(final double value) {
+    return Math.max(this.min, Math.min(this.max, value));
+  }
+}
@@ -0,0 +1,39 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.util;
+
+/**
+ * Distance calculations on a spherical earth model for coordinates given in degrees.
+ */
+public final class GeoDistance {
+
+  /**
+   * The mean earth radius in meters.
+   */
+  public static final double EARTH_RADIUS_METERS = 6371008.8;
+
+  /**
+   * The length of one degree of latitude in meters.
+   */
+  public static final double METERS_PER_DEGREE = Math.toRadians(EARTH_RADIUS_METERS);
+
+  private GeoDistance() {}
+
+  /**
+   * Calculates the great circle distance using the haversine formula.
+   *
+   * @param lat1
+   * @param lng1
+   * @param lat2
+   * @param lng2
+   * @return the distance in meters
+   */
+  public static double haversine(final double lat1, final double lng1, final double lat2, final double lng2) {
+    final double sinLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+    final double sinLng = Math.sin(Math.toRadians(lng2 - lng1) / 2);
+    final double a = sinLat * sinLat
+        + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+    return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+}
@@ -1,446 +1,684 @@
-/*
- * Copyright (C) 2019 HERE Europe B.V. Licensed under MIT, see full license in LICENSE
- * SPDX-License-Identifier: MIT License-Filename: LICENSE
- */
-package one.tracking.framework.generator.util;
-
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
-
-/**
- * The polyline encoding is a lossy compressed representation of a list of coordinate pairs or
- * coordinate triples. It achieves that by:
- * <p>
- * <ol>
- * <li>Reducing the decimal digits of each value.
- * <li>Encoding only the offset from the previous point.
- * <li>Using variable length for each coordinate delta.
- * <li>Using 64 URL-safe characters to display the result.
- * </ol>
- * <p>
- *
- * The advantage of this encoding are the following:
- * <p>
- * <ul>
- * <li>Output string is composed by only URL-safe characters
- * <li>Floating point precision is configurable
- * <li>It allows to encode a 3rd dimension with a given precision, which may be a level, altitude,
- * elevation or some other custom value
- * </ul>
- * <p>
- */
-public class PolylineEncoderDecoder {
-
-  /**
-   * Header version A change in the version may affect the logic to encode and decode the rest of the
-   * header and data
-   */
-  public static final byte FORMAT_VERSION = 1;
-
-  // Base64 URL-safe characters
-  public static final char[] ENCODING_TABLE =
-      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
-
-  public static final int[] DECODING_TABLE = {
-      62, -1, -1, 52, 53, 54, 55, 56, 57, 58, 59, 60, 61, -1, -1, -1, -1, -1, -1, -1,
-      0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21,
-      22, 23, 24, 25, -1, -1, -1, -1, 63, -1, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35,
-      36, 37, 38, 39, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51
-  };
-
-  /**
-   * Encode the list of coordinate triples.<BR>
-   * <BR>
-   * The third dimension value will be eligible for encoding only when ThirdDimension is other than
-   * ABSENT. This is lossy compression based on precision accuracy.
-   *
-   * @param coordinates {@link List} of coordinate triples that to be encoded.
-   * @param precision Floating point precision of the coordinate to be encoded.
-   * @param thirdDimension {@link ThirdDimension} which may be a level, altitude, elevation or some
-   *        other custom value
-   * @param thirdDimPrecision Floating point precision for thirdDimension value
-   * @return URL-safe encoded {@link String} for the given coordinates.
-   */
-  public static String encode(final List<LatLngZ> coordinates, final int precision, final ThirdDimension thirdDimension,
-      final int thirdDimPrecision) {
-    if (coordinates == null || coordinates.size() == 0) {
-      throw new IllegalArgumentException("Invalid coordinates!");
-    }
-    if (thirdDimension == null) {
-      throw new IllegalArgumentException("Invalid thirdDimension");
-    }
-    final Encoder enc = new Encoder(precision, thirdDimension, thirdDimPrecision);
-    final Iterator<LatLngZ> iter = coordinates.iterator();
-    while (iter.hasNext()) {
-      enc.add(iter.next());
-    }
-    return enc.getEncoded();
-  }
-
-  /**
-   * Decode the encoded input {@link String} to {@link List} of coordinate triples.<BR>
-   * <BR>
-   *
-   * @param encoded URL-safe encoded {@link String}
-   * @return {@link List} of coordinate triples that are decoded from input
-   *
-   * @see PolylineDecoder#getThirdDimension(String) getThirdDimension
-   * @see LatLngZ
-   */
-  public static final List<LatLngZ> decode(final String encoded) {
-
-    if (encoded == null || encoded.trim().isEmpty()) {
-      throw new IllegalArgumentException("Invalid argument!");
-    }
-    final List<LatLngZ> result = new ArrayList<>();
-    final Decoder dec = new Decoder(encoded);
-    AtomicReference<Double> lat = new AtomicReference<>(0d);
-    AtomicReference<Double> lng = new AtomicReference<>(0d);
-    AtomicReference<Double> z = new AtomicReference<>(0d);
-
-    while (dec.decodeOne(lat, lng, z)) {
-      result.add(new LatLngZ(lat.get(), lng.get(), z.get()));
-      lat = new AtomicReference<>(0d);
-      lng = new AtomicReference<>(0d);
-      z = new AtomicReference<>(0d);
-    }
-    return result;
-  }
-
-  /**
-   * ThirdDimension type from the encoded input {@link String}
-   *
-   * @param encoded URL-safe encoded coordinate triples {@link String}
-   * @return type of {@link ThirdDimension}
-   */
-  public static ThirdDimension getThirdDimension(final String encoded) {
-    final AtomicInteger index = new AtomicInteger(0);
-    final AtomicLong header = new AtomicLong(0);
-    Decoder.decodeHeaderFromString(encoded, index, header);
-    return ThirdDimension.fromNum((header.get() >> 4) & 7);
-  }
-
-  public byte getVersion() {
-    return FORMAT_VERSION;
-  }
-
-  /*
-   * Single instance for configuration, validation and encoding for an input request.
-   */
-  private static class Encoder {
-
-    private final StringBuilder result;
-    private final Converter latConveter;
-    private final Converter lngConveter;
-    private final Converter zConveter;
-    private final ThirdDimension thirdDimension;
-
-    public Encoder(final int precision, final ThirdDimension thirdDimension, final int thirdDimPrecision) {
-      this.latConveter = new Converter(precision);
-      this.lngConveter = new Converter(precision);
-      this.zConveter = new Converter(thirdDimPrecision);
-      this.thirdDimension = thirdDimension;
-      this.result = new StringBuilder();
-      encodeHeader(precision, this.thirdDimension.getNum(), thirdDimPrecision);
-    }
-
-    private void encodeHeader(final int precision, final int thirdDimensionValue, final int thirdDimPrecision) {
-      /*
-       * Encode the `precision`, `third_dim` and `third_dim_precision` into one encoded char
-       */
-      if (precision < 0 || precision > 15) {
-        throw new IllegalArgumentException("precision out of range");
-      }
-
-      if (thirdDimPrecision < 0 || thirdDimPrecision > 15) {
-        throw new IllegalArgumentException("thirdDimPrecision out of range");
-      }
-
-      if (thirdDimensionValue < 0 || thirdDimensionValue > 7) {
-        throw new IllegalArgumentException("thirdDimensionValue out of range");
-      }
-      final long res = (thirdDimPrecision << 7) | (thirdDimensionValue << 4) | precision;
-      Converter.encodeUnsignedVarint(PolylineEncoderDecoder.FORMAT_VERSION, this.result);
-      Converter.encodeUnsignedVarint(res, this.result);
-    }
-
-    private void add(final double lat, final double lng) {
-      this.latConveter.encodeValue(lat, this.result);
-      this.lngConveter.encodeValue(lng, this.result);
-    }
-
-    private void add(final double lat, final double lng, final double z) {
-      add(lat, lng);
-      if (this.thirdDimension != ThirdDimension.ABSENT) {
-        this.zConveter.encodeValue(z, this.result);
-      }
-    }
-
-    private void add(final LatLngZ tuple) {
-      if (tuple == null) {
-        throw new IllegalArgumentException("Invalid LatLngZ tuple");
-      }
-      add(tuple.lat, tuple.lng, tuple.z);
-    }
-
-    private String getEncoded() {
-      return this.result.toString();
-    }
-  }
-
-  /*
-   * Single instance for decoding an input request.
-   */
-  private static class Decoder {
-
-    private final String encoded;
-    private final AtomicInteger index;
-    private final Converter latConveter;
-    private final Converter lngConveter;
-    private final Converter zConveter;
-
-    private int precision;
-    private int thirdDimPrecision;
-    private ThirdDimension thirdDimension;
-
-
-    public Decoder(final String encoded) {
-      this.encoded = encoded;
-      this.index = new AtomicInteger(0);
-      decodeHeader();
-      this.latConveter = new Converter(this.precision);
-      this.lngConveter = new Converter(this.precision);
-      this.zConveter = new Converter(this.thirdDimPrecision);
-    }
-
-    private boolean hasThirdDimension() {
-      return this.thirdDimension != ThirdDimension.ABSENT;
-    }
-
-    private void decodeHeader() {
-      final AtomicLong header = new AtomicLong(0);
-      decodeHeaderFromString(this.encoded, this.index, header);
-      this.precision = (int) (header.get() & 15); // we pick the first 3 bits only
-      header.set(header.get() >> 4);
-      this.thirdDimension = ThirdDimension.fromNum(header.get() & 7); // we pick the first 4 bits only
-      this.thirdDimPrecision = (int) ((header.get() >> 3) & 15);
-    }
-
-    private static void decodeHeaderFromString(final String encoded, final AtomicInteger index,
-        final AtomicLong header) {
-      final AtomicLong value = new AtomicLong(0);
-
-      // Decode the header version
-      if (!Converter.decodeUnsignedVarint(encoded.toCharArray(), index, value)) {
-        throw new IllegalArgumentException("Invalid encoding");
-      }
-      if (value.get() != FORMAT_VERSION) {
-        throw new IllegalArgumentException("Invalid format version");
-      }
-      // Decode the polyline header
-      if (!Converter.decodeUnsignedVarint(encoded.toCharArray(), index, value)) {
-        throw new IllegalArgumentException("Invalid encoding");
-      }
-      header.set(value.get());
-    }
-
-
-    private boolean decodeOne(final AtomicReference<Double> lat,
-        final AtomicReference<Double> lng,
-        final AtomicReference<Double> z) {
-      if (this.index.get() == this.encoded.length()) {
-        return false;
-      }
-      if (!this.latConveter.decodeValue(this.encoded, this.index, lat)) {
-        throw new IllegalArgumentException("Invalid encoding");
-      }
-      if (!this.lngConveter.decodeValue(this.encoded, this.index, lng)) {
-        throw new IllegalArgumentException("Invalid encoding");
-      }
-      if (hasThirdDimension()) {
-        if (!this.zConveter.decodeValue(this.encoded, this.index, z)) {
-          throw new IllegalArgumentException("Invalid encoding");
-        }
-      }
-      return true;
-    }
-  }
-
-  // Decode a single char to the corresponding value
-  private static int decodeChar(final char charValue) {
-    final int pos = charValue - 45;
-    if (pos < 0 || pos > 77) {
-      return -1;
-    }
-    return DECODING_TABLE[pos];
-  }
-
-  /*
-   * Stateful instance for encoding and decoding on a sequence of Coordinates part of an request.
-   * Instance should be specific to type of coordinates (e.g. Lat, Lng) so that specific type delta is
-   * computed for encoding. Lat0 Lng0 3rd0 (Lat1-Lat0) (Lng1-Lng0) (3rdDim1-3rdDim0)
-   */
-  public static class Converter {
-
-    private long multiplier = 0;
-    private long lastValue = 0;
-
-    public Converter(final int precision) {
-      setPrecision(precision);
-    }
-
-    private void setPrecision(final int precision) {
-      this.multiplier = (long) Math.pow(10, Double.valueOf(precision));
-    }
-
-    private static void encodeUnsignedVarint(long value, final StringBuilder result) {
-      while (value > 0x1F) {
-        final byte pos = (byte) ((value & 0x1F) | 0x20);
-        result.append(ENCODING_TABLE[pos]);
-        value >>= 5;
-      }
-      result.append(ENCODING_TABLE[(byte) value]);
-    }
-
-    void encodeValue(final double value, final StringBuilder result) {
-      /*
-       * Round-half-up round(-1.4) --> -1 round(-1.5) --> -2 round(-2.5) --> -3
-       */
-      final long scaledValue = Math.round(Math.abs(value * this.multiplier)) * Math.round(Math.signum(value));
-      long delta = scaledValue - this.lastValue;
-      final boolean negative = delta < 0;
-
-      this.lastValue = scaledValue;
-
-      // make room on lowest bit
-      delta <<= 1;
-
-      // invert bits if the value is negative
-      if (negative) {
-        delta = ~delta;
-      }
-      encodeUnsignedVarint(delta, result);
-    }
-
-    private static boolean decodeUnsignedVarint(final char[] encoded,
-        final AtomicInteger index,
-        final AtomicLong result) {
-      short shift = 0;
-      long delta = 0;
-      long value;
-
-      while (index.get() < encoded.length) {
-        value = decodeChar(encoded[index.get()]);
-        if (value < 0) {
-          return false;
-        }
-        index.incrementAndGet();
-        delta |= (value & 0x1F) << shift;
-        if ((value & 0x20) == 0) {
-          result.set(delta);
-          return true;
-        } else {
-          shift += 5;
-        }
-      }
-
-      if (shift > 0) {
-        return false;
-      }
-      return true;
-    }
-
-    // Decode single coordinate (say lat|lng|z) starting at index
-    boolean decodeValue(final String encoded,
-        final AtomicInteger index,
-        final AtomicReference<Double> coordinate) {
-      final AtomicLong delta = new AtomicLong();
-      if (!decodeUnsignedVarint(encoded.toCharArray(), index, delta)) {
-        return false;
-      }
-      if ((delta.get() & 1) != 0) {
-        delta.set(~delta.get());
-      }
-      delta.set(delta.get() >> 1);
-      this.lastValue += delta.get();
-      coordinate.set(((double) this.lastValue / this.multiplier));
-      return true;
-    }
-  }
-
-  /**
-   * 3rd dimension specification. Example a level, altitude, elevation or some other custom value.
-   * ABSENT is default when there is no third dimension en/decoding required.
-   */
-  public enum ThirdDimension {
-    ABSENT(0),
-    LEVEL(1),
-    ALTITUDE(2),
-    ELEVATION(3),
-    RESERVED1(4),
-    RESERVED2(5),
-    CUSTOM1(6),
-    CUSTOM2(7);
-
-    private final int num;
-
-    ThirdDimension(final int num) {
-      this.num = num;
-    }
-
-    public int getNum() {
-      return this.num;
-    }
-
-    public static ThirdDimension fromNum(final long value) {
-      for (final ThirdDimension dim : ThirdDimension.values()) {
-        if (dim.getNum() == value) {
-          return dim;
-        }
-      }
-      return null;
-    }
-  }
-
-  /**
-   * Coordinate triple
-   */
-  public static class LatLngZ {
-    public final double lat;
-    public final double lng;
-    public final double z;
-
-    public LatLngZ(final double latitude, final double longitude) {
-      this(latitude, longitude, 0);
-    }
-
-    public LatLngZ(final double latitude, final double longitude, final double thirdDimension) {
-      this.lat = latitude;
-      this.lng = longitude;
-      this.z = thirdDimension;
-    }
-
-    @Override
-    public String toString() {
-      return "LatLngZ [lat=" + this.lat + ", lng=" + this.lng + ", z=" + this.z + "]";
-    }
-
-    @Override
-    public boolean equals(final Object anObject) {
-      if (this == anObject) {
-        return true;
-      }
-      if (anObject instanceof LatLngZ) {
-        final LatLngZ passed = (LatLngZ) anObject;
-        if (passed.lat == this.lat && passed.lng == this.lng && passed.z == this.z) {
-          return true;
-        }
-      }
-      return false;
-    }
-  }
-}
+/*
+ * Copyright (C) 2019 HERE Europe B.V. Licensed under MIT, see full license in LICENSE
+ * SPDX-License-Identifier: MIT License-Filename: LICENSE
+ */
+package one.tracking.framework.generator.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The polyline encoding is a lossy compressed representation of a list of coordinate pairs or
+ * coordinate triples. It achieves that by:
+ * <p>
+ * <ol>
+ * <li>Reducing the decimal digits of each value.
+ * <li>Encoding only the offset from the previous point.
+ * <li>Using variable length for each coordinate delta.
+ * <li>Using 64 URL-safe characters to display the result.
+ * </ol>
+ * <p>
+ *
+ * The advantage of this encoding are the following:
+ * <p>
+ * <ul>
+ * <li>Output string is composed by only URL-safe characters
+ * <li>Floating point precision is configurable
+ * <li>It allows to encode a 3rd dimension with a given precision, which may be a level, altitude,
+ * elevation or some other custom value
+ * </ul>
+ * <p>
+ */
+public class PolylineEncoderDecoder {
+
+  /**
+   * Header version A change in the version may affect the logic to encode and decode the rest of the
+   * header and data
+   */
+  public static final byte FORMAT_VERSION = 1;
+
+  // Base64 URL-safe characters
+  public static final char[] ENCODING_TABLE =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+  public static final int[] DECODING_TABLE = {
+      62, -1, -1, 52, 53, 54, 55, 56, 57, 58, 59, 60, 61, -1, -1, -1, -1, -1, -1, -1,
+      0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21,
+      22, 23, 24, 25, -1, -1, -1, -1, 63, -1, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35,
+      36, 37, 38, 39, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51
+  };
+
+  /**
+   * Encode the list of coordinate triples.<BR>
+   * <BR>
+   * The third dimension value will be eligible for encoding only when ThirdDimension is other than
+   * ABSENT. This is lossy compression based on precision accuracy.
+   *
+   * @param coordinates {@link List} of coordinate triples that to be encoded.
+   * @param precision Floating point precision of the coordinate to be encoded.
+   * @param thirdDimension {@link ThirdDimension} which may be a level, altitude, elevation or some
+   *        other custom value
+   * @param thirdDimPrecision Floating point precision for thirdDimension value
+   * @return URL-safe encoded {@link String} for the given coordinates.
+   */
+  public static String encode(final List<LatLngZ> coordinates, final int precision, final ThirdDimension thirdDimension,
+      final int thirdDimPrecision) {
+    if (coordinates == null || coordinates.size() == 0) {
+      throw new IllegalArgumentException("Invalid coordinates!");
+    }
+    if (thirdDimension == null) {
+      throw new IllegalArgumentException("Invalid thirdDimension");
+    }
+    final Encoder enc = new Encoder(precision, thirdDimension, thirdDimPrecision);
+    final Iterator<LatLngZ> iter = coordinates.iterator();
+    while (iter.hasNext()) {
+      enc.add(iter.next());
+    }
+    return enc.getEncoded();
+  }
+
+  /**
+   * Encode the coordinates given as primitive arrays.<BR>
+   * <BR>
+   * The output is identical to {@link #encode(List, int, ThirdDimension, int)} for the same
+   * coordinates.
+   *
+   * @param lat latitudes of the coordinates to be encoded
+   * @param lng longitudes of the coordinates to be encoded
+   * @param z third dimension values of the coordinates to be encoded. May be null if thirdDimension
+   *        is ABSENT.
+   * @param length the amount of coordinates to be encoded starting at index 0
+   * @param precision Floating point precision of the coordinate to be encoded.
+   * @param thirdDimension {@link ThirdDimension} which may be a level, altitude, elevation or some
+   *        other custom value
+   * @param thirdDimPrecision Floating point precision for thirdDimension value
+   * @return URL-safe encoded {@link String} for the given coordinates.
+   */
+  public static String encode(final double[] lat, final double[] lng, final double[] z, final int length,
+      final int precision, final ThirdDimension thirdDimension, final int thirdDimPrecision) {
+    return encode(lat, lng, z, length, precision, thirdDimension, thirdDimPrecision,
+        new StringBuilder(estimateLength(length, thirdDimension))).toString();
+  }
+
+  /**
+   * Encode the coordinates given as primitive arrays and append the result to the given
+   * {@link StringBuilder}. The builder is not cleared, so callers encoding many polylines may reuse a
+   * single builder by resetting its length in between.<BR>
+   * <BR>
+   * The appended characters are identical to the output of
+   * {@link #encode(List, int, ThirdDimension, int)} for the same coordinates.
+   *
+   * @param lat latitudes of the coordinates to be encoded
+   * @param lng longitudes of the coordinates to be encoded
+   * @param z third dimension values of the coordinates to be encoded. May be null if thirdDimension
+   *        is ABSENT.
+   * @param length the amount of coordinates to be encoded starting at index 0
+   * @param precision Floating point precision of the coordinate to be encoded.
+   * @param thirdDimension {@link ThirdDimension} which may be a level, altitude, elevation or some
+   *        other custom value
+   * @param thirdDimPrecision Floating point precision for thirdDimension value
+   * @param result the {@link StringBuilder} to append the encoded coordinates to
+   * @return the given {@link StringBuilder}
+   */
+  public static StringBuilder encode(final double[] lat, final double[] lng, final double[] z, final int length,
+      final int precision, final ThirdDimension thirdDimension, final int thirdDimPrecision,
+      final StringBuilder result) {
+    if (lat == null || lng == null || length <= 0 || lat.length < length || lng.length < length) {
+      throw new IllegalArgumentException("Invalid coordinates!");
+    }
+    if (thirdDimension == null) {
+      throw new IllegalArgumentException("Invalid thirdDimension");
+    }
+    final boolean hasThirdDimension = thirdDimension != ThirdDimension.ABSENT;
+    if (hasThirdDimension && (z == null || z.length < length)) {
+      throw new IllegalArgumentException("Invalid thirdDimension values!");
+    }
+    if (result == null) {
+      throw new IllegalArgumentException("Invalid result!");
+    }
+    result.ensureCapacity(result.length() + estimateLength(length, thirdDimension));
+
+    final Encoder enc = new Encoder(precision, thirdDimension, thirdDimPrecision, result);
+    if (hasThirdDimension) {
+      for (int i = 0; i < length; i++) {
+        enc.add(lat[i], lng[i], z[i]);
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        enc.add(lat[i], lng[i]);
+      }
+    }
+    return result;
+  }
+
+  /*
+   * Rough estimate of the encoded length: header plus up to four characters per value, which is the
+   * common size for deltas between neighboring route vertices.
+   */
+  private static int estimateLength(final int length, final ThirdDimension thirdDimension) {
+    final int values = thirdDimension == null || thirdDimension == ThirdDimension.ABSENT ? 2 : 3;
+    return 2 + length * values * 4;
+  }
+
+  /**
+   * Decode the encoded input {@link String} to {@link List} of coordinate triples.<BR>
+   * <BR>
+   *
+   * @param encoded URL-safe encoded {@link String}
+   * @return {@link List} of coordinate triples that are decoded from input
+   *
+   * @see PolylineDecoder#getThirdDimension(String) getThirdDimension
+   * @see LatLngZ
+   */
+  public static final List<LatLngZ> decode(final String encoded) {
+
+    if (encoded == null || encoded.trim().isEmpty()) {
+      throw new IllegalArgumentException("Invalid argument!");
+    }
+    final List<LatLngZ> result = new ArrayList<>();
+    final Decoder dec = new Decoder(encoded);
+
+    while (dec.decodeOne()) {
+      result.add(new LatLngZ(dec.lat, dec.lng, dec.z));
+    }
+    return result;
+  }
+
+  /**
+   * Decode the encoded input {@link String} into the given {@link CoordinateBuffer}. The buffer is
+   * cleared before decoding and may be reused for subsequent calls to avoid allocating a coordinate
+   * object per decoded point.<BR>
+   * <BR>
+   * The decoded values are identical to the ones returned by {@link #decode(String)}.
+   *
+   * @param encoded URL-safe encoded {@link String}
+   * @param target the {@link CoordinateBuffer} to write the decoded coordinate triples to
+   * @return the given target buffer
+   */
+  public static final CoordinateBuffer decode(final String encoded, final CoordinateBuffer target) {
+
+    if (encoded == null || encoded.trim().isEmpty()) {
+      throw new IllegalArgumentException("Invalid argument!");
+    }
+    if (target == null) {
+      throw new IllegalArgumentException("Invalid target!");
+    }
+    target.clear();
+    decode(encoded, (CoordinateVisitor) target);
+    return target;
+  }
+
+  /**
+   * Decode the encoded input {@link String} and pass each coordinate triple to the given
+   * {@link CoordinateVisitor} as soon as it has been decoded. No intermediate collection is built, so
+   * callers may process arbitrarily long polylines with constant memory.<BR>
+   * <BR>
+   * The third dimension value will be 0 if the encoded input has no third dimension.
+   *
+   * @param encoded URL-safe encoded {@link String}
+   * @param visitor the {@link CoordinateVisitor} receiving the decoded coordinate triples
+   * @return the amount of decoded coordinate triples
+   */
+  public static final int decode(final String encoded, final CoordinateVisitor visitor) {
+
+    if (encoded == null || encoded.trim().isEmpty()) {
+      throw new IllegalArgumentException("Invalid argument!");
+    }
+    if (visitor == null) {
+      throw new IllegalArgumentException("Invalid visitor!");
+    }
+    final Decoder dec = new Decoder(encoded);
+
+    int count = 0;
+    while (dec.decodeOne()) {
+      visitor.visit(dec.lat, dec.lng, dec.z);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * ThirdDimension type from the encoded input {@link String}
+   *
+   * @param encoded URL-safe encoded coordinate triples {@link String}
+   * @return type of {@link ThirdDimension}
+   */
+  public static ThirdDimension getThirdDimension(final String encoded) {
+    final Decoder dec = new Decoder(encoded);
+    return dec.thirdDimension;
+  }
+
+  public byte getVersion() {
+    return FORMAT_VERSION;
+  }
+
+  /*
+   * Single instance for configuration, validation and encoding for an input request.
+   */
+  private static class Encoder {
+
+    private final StringBuilder result;
+    private final Converter latConveter;
+    private final Converter lngConveter;
+    private final Converter zConveter;
+    private final ThirdDimension thirdDimension;
+
+    public Encoder(final int precision, final ThirdDimension thirdDimension, final int thirdDimPrecision) {
+      this(precision, thirdDimension, thirdDimPrecision, new StringBuilder());
+    }
+
+    public Encoder(final int precision, final ThirdDimension thirdDimension, final int thirdDimPrecision,
+        final StringBuilder result) {
+      this.latConveter = new Converter(precision);
+      this.lngConveter = new Converter(precision);
+      this.zConveter = new Converter(thirdDimPrecision);
+      this.thirdDimension = thirdDimension;
+      this.result = result;
+      encodeHeader(precision, this.thirdDimension.getNum(), thirdDimPrecision);
+    }
+
+    private void encodeHeader(final int precision, final int thirdDimensionValue, final int thirdDimPrecision) {
+      /*
+       * Encode the `precision`, `third_dim` and `third_dim_precision` into one encoded char
+       */
+      if (precision < 0 || precision > 15) {
+        throw new IllegalArgumentException("precision out of range");
+      }
+
+      if (thirdDimPrecision < 0 || thirdDimPrecision > 15) {
+        throw new IllegalArgumentException("thirdDimPrecision out of range");
+      }
+
+      if (thirdDimensionValue < 0 || thirdDimensionValue > 7) {
+        throw new IllegalArgumentException("thirdDimensionValue out of range");
+      }
+      final long res = (thirdDimPrecision << 7) | (thirdDimensionValue << 4) | precision;
+      Converter.encodeUnsignedVarint(PolylineEncoderDecoder.FORMAT_VERSION, this.result);
+      Converter.encodeUnsignedVarint(res, this.result);
+    }
+
+    private void add(final double lat, final double lng) {
+      this.latConveter.encodeValue(lat, this.result);
+      this.lngConveter.encodeValue(lng, this.result);
+    }
+
+    private void add(final double lat, final double lng, final double z) {
+      add(lat, lng);
+      if (this.thirdDimension != ThirdDimension.ABSENT) {
+        this.zConveter.encodeValue(z, this.result);
+      }
+    }
+
+    private void add(final LatLngZ tuple) {
+      if (tuple == null) {
+        throw new IllegalArgumentException("Invalid LatLngZ tuple");
+      }
+      add(tuple.lat, tuple.lng, tuple.z);
+    }
+
+    private String getEncoded() {
+      return this.result.toString();
+    }
+  }
+
+  /*
+   * Single instance for decoding an input request. The encoded string is walked exactly once using
+   * primitive state only, the last decoded coordinate triple is exposed via the lat, lng and z fields.
+   */
+  private static class Decoder {
+
+    private final String encoded;
+    private final int length;
+    private final Converter latConveter;
+    private final Converter lngConveter;
+    private final Converter zConveter;
+
+    private int index;
+    private long value;
+
+    private int precision;
+    private int thirdDimPrecision;
+    private ThirdDimension thirdDimension;
+
+    private double lat;
+    private double lng;
+    private double z;
+
+    public Decoder(final String encoded) {
+      this.encoded = encoded;
+      this.length = encoded.length();
+      this.index = 0;
+      decodeHeader();
+      this.latConveter = new Converter(this.precision);
+      this.lngConveter = new Converter(this.precision);
+      this.zConveter = new Converter(this.thirdDimPrecision);
+    }
+
+    private boolean hasThirdDimension() {
+      return this.thirdDimension != ThirdDimension.ABSENT;
+    }
+
+    private void decodeHeader() {
+      // Decode the header version
+      if (!decodeUnsignedVarint()) {
+        throw new IllegalArgumentException("Invalid encoding");
+      }
+      if (this.value != FORMAT_VERSION) {
+        throw new IllegalArgumentException("Invalid format version");
+      }
+      // Decode the polyline header
+      if (!decodeUnsignedVarint()) {
+        throw new IllegalArgumentException("Invalid encoding");
+      }
+      long header = this.value;
+      this.precision = (int) (header & 15); // we pick the first 3 bits only
+      header >>= 4;
+      this.thirdDimension = ThirdDimension.fromNum(header & 7); // we pick the first 4 bits only
+      this.thirdDimPrecision = (int) ((header >> 3) & 15);
+    }
+
+    /*
+     * Decodes the unsigned varint starting at the current index into value. If the input is exhausted
+     * before a varint was started, value is left untouched.
+     */
+    private boolean decodeUnsignedVarint() {
+      short shift = 0;
+      long delta = 0;
+      int charValue;
+
+      while (this.index < this.length) {
+        charValue = decodeChar(this.encoded.charAt(this.index));
+        if (charValue < 0) {
+          return false;
+        }
+        this.index++;
+        delta |= (charValue & 0x1FL) << shift;
+        if ((charValue & 0x20) == 0) {
+          this.value = delta;
+          return true;
+        } else {
+          shift += 5;
+        }
+      }
+
+      if (shift > 0) {
+        return false;
+      }
+      return true;
+    }
+
+    // Decode single coordinate (say lat|lng|z) starting at index
+    private boolean decodeValue(final Converter converter) {
+      this.value = 0;
+      if (!decodeUnsignedVarint()) {
+        return false;
+      }
+      converter.decodeDelta(this.value);
+      return true;
+    }
+
+    private boolean decodeOne() {
+      if (this.index == this.length) {
+        return false;
+      }
+      if (!decodeValue(this.latConveter)) {
+        throw new IllegalArgumentException("Invalid encoding");
+      }
+      this.lat = this.latConveter.toCoordinate();
+      if (!decodeValue(this.lngConveter)) {
+        throw new IllegalArgumentException("Invalid encoding");
+      }
+      this.lng = this.lngConveter.toCoordinate();
+      if (hasThirdDimension()) {
+        if (!decodeValue(this.zConveter)) {
+          throw new IllegalArgumentException("Invalid encoding");
+        }
+        this.z = this.zConveter.toCoordinate();
+      }
+      return true;
+    }
+  }
+
+  // Decode a single char to the corresponding value
+  private static int decodeChar(final char charValue) {
+    final int pos = charValue - 45;
+    if (pos < 0 || pos > 77) {
+      return -1;
+    }
+    return DECODING_TABLE[pos];
+  }
+
+  /*
+   * Stateful instance for encoding and decoding on a sequence of Coordinates part of an request.
+   * Instance should be specific to type of coordinates (e.g. Lat, Lng) so that specific type delta is
+   * computed for encoding. Lat0 Lng0 3rd0 (Lat1-Lat0) (Lng1-Lng0) (3rdDim1-3rdDim0)
+   */
+  public static class Converter {
+
+    // Precomputed multipliers for all precisions which can be expressed by the header
+    private static final long[] MULTIPLIERS = new long[16];
+
+    static {
+      long multiplier = 1;
+      for (int i = 0; i < MULTIPLIERS.length; i++) {
+        MULTIPLIERS[i] = multiplier;
+        multiplier *= 10;
+      }
+    }
+
+    private long multiplier = 0;
+    private long lastValue = 0;
+
+    public Converter(final int precision) {
+      setPrecision(precision);
+    }
+
+    private void setPrecision(final int precision) {
+      if (precision >= 0 && precision < MULTIPLIERS.length) {
+        this.multiplier = MULTIPLIERS[precision];
+      } else {
+        this.multiplier = (long) Math.pow(10, Double.valueOf(precision));
+      }
+    }
+
+    private static void encodeUnsignedVarint(long value, final StringBuilder result) {
+      while (value > 0x1F) {
+        final byte pos = (byte) ((value & 0x1F) | 0x20);
+        result.append(ENCODING_TABLE[pos]);
+        value >>= 5;
+      }
+      result.append(ENCODING_TABLE[(byte) value]);
+    }
+
+    void encodeValue(final double value, final StringBuilder result) {
+      /*
+       * Round-half-up round(-1.4) --> -1 round(-1.5) --> -2 round(-2.5) --> -3
+       */
+      final long scaledValue = Math.round(Math.abs(value * this.multiplier)) * Math.round(Math.signum(value));
+      long delta = scaledValue - this.lastValue;
+      final boolean negative = delta < 0;
+
+      this.lastValue = scaledValue;
+
+      // make room on lowest bit
+      delta <<= 1;
+
+      // invert bits if the value is negative
+      if (negative) {
+        delta = ~delta;
+      }
+      encodeUnsignedVarint(delta, result);
+    }
+
+    // Apply the zig-zag encoded delta of a single coordinate (say lat|lng|z)
+    void decodeDelta(long delta) {
+      if ((delta & 1) != 0) {
+        delta = ~delta;
+      }
+      delta >>= 1;
+      this.lastValue += delta;
+    }
+
+    double toCoordinate() {
+      return (double) this.lastValue / this.multiplier;
+    }
+  }
+
+  /**
+   * 3rd dimension specification. Example a level, altitude, elevation or some other custom value.
+   * ABSENT is default when there is no third dimension en/decoding required.
+   */
+  public enum ThirdDimension {
+    ABSENT(0),
+    LEVEL(1),
+    ALTITUDE(2),
+    ELEVATION(3),
+    RESERVED1(4),
+    RESERVED2(5),
+    CUSTOM1(6),
+    CUSTOM2(7);
+
+    private final int num;
+
+    ThirdDimension(final int num) {
+      this.num = num;
+    }
+
+    public int getNum() {
+      return this.num;
+    }
+
+    public static ThirdDimension fromNum(final long value) {
+      for (final ThirdDimension dim : ThirdDimension.values()) {
+        if (dim.getNum() == value) {
+          return dim;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Coordinate triple
+   */
+  public static class LatLngZ {
+    public final double lat;
+    public final double lng;
+    public final double z;
+
+    public LatLngZ(final double latitude, final double longitude) {
+      this(latitude, longitude, 0);
+    }
+
+    public LatLngZ(final double latitude, final double longitude, final double thirdDimension) {
+      this.lat = latitude;
+      this.lng = longitude;
+      this.z = thirdDimension;
+    }
+
+    @Override
+    public String toString() {
+      return "LatLngZ [lat=" + this.lat + ", lng=" + this.lng + ", z=" + this.z + "]";
+    }
+
+    @Override
+    public boolean equals(final Object anObject) {
+      if (this == anObject) {
+        return true;
+      }
+      if (anObject instanceof LatLngZ) {
+        final LatLngZ passed = (LatLngZ) anObject;
+        if (passed.lat == this.lat && passed.lng == this.lng && passed.z == this.z) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Callback receiving decoded coordinate triples one by one.
+   */
+  @FunctionalInterface
+  public interface CoordinateVisitor {
+
+    void visit(double lat, double lng, double z);
+  }
+
+  /**
+   * Reusable primitive buffer of coordinate triples. Values are stored interleaved as lat, lng, z
+   * within a single growing double array, so no object is allocated per coordinate.
+   */
+  public static class CoordinateBuffer implements CoordinateVisitor {
+
+    private static final int STRIDE = 3;
+
+    private double[] values;
+    private int size;
+
+    public CoordinateBuffer() {
+      this(64);
+    }
+
+    public CoordinateBuffer(final int initialCapacity) {
+      this.values = new double[Math.max(1, initialCapacity) * STRIDE];
+      this.size = 0;
+    }
+
+    public void add(final double lat, final double lng, final double z) {
+      final int offset = this.size * STRIDE;
+      if (offset + STRIDE > this.values.length) {
+        this.values = Arrays.copyOf(this.values, this.values.length * 2);
+      }
+      this.values[offset] = lat;
+      this.values[offset + 1] = lng;
+      this.values[offset + 2] = z;
+      this.size++;
+    }
+
+    @Override
+    public void visit(final double lat, final double lng, final double z) {
+      add(lat, lng, z);
+    }
+
+    public void clear() {
+      this.size = 0;
+    }
+
+    public int size() {
+      return this.size;
+    }
+
+    public boolean isEmpty() {
+      return this.size == 0;
+    }
+
+    public double getLat(final int index) {
+      return this.values[checkIndex(index) * STRIDE];
+    }
+
+    public double getLng(final int index) {
+      return this.values[checkIndex(index) * STRIDE + 1];
+    }
+
+    public double getZ(final int index) {
+      return this.values[checkIndex(index) * STRIDE + 2];
+    }
+
+    /**
+     * @return a copy of the buffered values as interleaved lat, lng, z triples
+     */
+    public double[] toArray() {
+      return Arrays.copyOf(this.values, this.size * STRIDE);
+    }
+
+    private int checkIndex(final int index) {
+      if (index < 0 || index >= this.size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+      }
+      return index;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.util;
+
+/**
+ * Moves along a route at a constant speed and emits positions in a fixed time interval like a GPS
+ * receiver. Segment lengths are great circle distances, positions in between two vertices are
+ * interpolated linearly. The destination is always emitted as the last sample at the end of the route,
+ * so consecutive routes connect.
+ */
+public final class RouteSampler {
+
+  /*
+   * Tolerance in steps, so a route with a length of a multiple of the step does not end with two
+   * samples at almost the same time
+   */
+  private static final double EPSILON = 1e-9;
+
+  private RouteSampler() {}
+
+  /**
+   *
+   * @param lats the latitudes of the vertices in degrees
+   * @param lngs the longitudes of the vertices in degrees
+   * @param length the amount of vertices to consider
+   * @param speed the speed in meters per second. Must be greater than 0.
+   * @param interval the time between two samples in seconds. A value of 0 or less emits every vertex
+   *        instead.
+   * @param visitor receives the samples ordered by time
+   * @return the duration of the route in seconds
+   */
+  public static double sample(final double[] lats, final double[] lngs, final int length, final double speed,
+      final double interval, final SampleVisitor visitor) {
+
+    if (!(speed > 0))
+      throw new IllegalArgumentException("Speed must be greater than 0");
+
+    if (length <= 0)
+      return 0;
+
+    final double[] distances = new double[length];
+    for (int i = 1; i < length; i++) {
+      distances[i] = distances[i - 1] + GeoDistance.haversine(lats[i - 1], lngs[i - 1], lats[i], lngs[i]);
+    }
+
+    if (!(interval > 0)) {
+      for (int i = 0; i < length; i++) {
+        visitor.visit(distances[i] / speed, lats[i], lngs[i]);
+      }
+      return distances[length - 1] / speed;
+    }
+
+    final double total = distances[length - 1];
+    final double step = speed * interval;
+
+    // The samples before the destination
+    final long samples = (long) Math.ceil(total / step - EPSILON);
+    if (samples >= Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Too many samples: " + samples);
+
+    int segment = 0;
+    for (int k = 0; k < samples; k++) {
+
+      final double distance = k * step;
+      while (segment < length - 2 && distances[segment + 1] < distance) {
+        segment++;
+      }
+
+      final double segmentLength = distances[segment + 1] - distances[segment];
+      final double fraction = segmentLength > 0
+          ? Math.max(0, Math.min(1, (distance - distances[segment]) / segmentLength))
+          : 0;
+
+      // Interpolate the shorter way around the antimeridian
+      double dLng = lngs[segment + 1] - lngs[segment];
+      if (dLng > 180)
+        dLng -= 360;
+      else if (dLng < -180)
+        dLng += 360;
+      double lng = lngs[segment] + fraction * dLng;
+      if (lng > 180)
+        lng -= 360;
+      else if (lng < -180)
+        lng += 360;
+
+      visitor.visit(k * interval, lats[segment] + fraction * (lats[segment + 1] - lats[segment]), lng);
+    }
+
+    visitor.visit(total / speed, lats[length - 1], lngs[length - 1]);
+    return total / speed;
+  }
+
+  /**
+   * Callback receiving the samples of a route one by one.
+   */
+  @FunctionalInterface
+  public interface SampleVisitor {
+
+    /**
+     *
+     * @param seconds the time since the start of the route in seconds
+     * @param lat
+     * @param lng
+     */
+    void visit(double seconds, double lat, double lng);
+  }
+}
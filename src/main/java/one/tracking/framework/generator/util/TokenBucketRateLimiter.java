@@ -0,0 +1,84 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simple thread safe token bucket. Tokens are refilled continuously with the configured rate up to
+ * the configured capacity. Callers acquiring a token block until one is available.
+ */
+public class TokenBucketRateLimiter {
+
+  private final double permitsPerNano;
+  private final double capacity;
+
+  private double tokens;
+  private long lastRefill;
+
+  /**
+   *
+   * @param permitsPerSecond the rate at which tokens are refilled. A value less or equal to 0 disables
+   *        rate limiting.
+   * @param capacity the maximum amount of tokens available for bursts. Minimum: 1
+   */
+  public TokenBucketRateLimiter(final double permitsPerSecond, final int capacity) {
+    this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.capacity = Math.max(1, capacity);
+    this.tokens = this.capacity;
+    this.lastRefill = System.nanoTime();
+  }
+
+  public boolean isUnlimited() {
+    return this.permitsPerNano <= 0;
+  }
+
+  /**
+   * Blocks until a token is available and consumes it.
+   *
+   * @throws InterruptedException
+   */
+  public void acquire() throws InterruptedException {
+
+    if (isUnlimited())
+      return;
+
+    while (true) {
+      final long waitNanos;
+      synchronized (this) {
+        refill();
+        if (this.tokens >= 1) {
+          this.tokens -= 1;
+          return;
+        }
+        waitNanos = (long) Math.ceil((1 - this.tokens) / this.permitsPerNano);
+      }
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /**
+   * Consumes a token if one is available without blocking.
+   *
+   * @return true if a token has been consumed
+   */
+  public synchronized boolean tryAcquire() {
+
+    if (isUnlimited())
+      return true;
+
+    refill();
+    if (this.tokens >= 1) {
+      this.tokens -= 1;
+      return true;
+    }
+    return false;
+  }
+
+  private void refill() {
+    final long now = System.nanoTime();
+    this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.permitsPerNano);
+    this.lastRefill = now;
+  }
+}
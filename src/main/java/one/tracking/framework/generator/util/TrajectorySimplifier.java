@@ -0,0 +1,121 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.util;
+
+/**
+ * Simplifies trajectories using the Douglas-Peucker algorithm with a tolerance in meters. Coordinates
+ * are projected onto a local equirectangular plane around the first position, which is accurate for
+ * trajectories spanning up to a few hundred kilometers.
+ * <p>
+ * The implementation works on primitive arrays without recursion, so it neither allocates objects per
+ * position nor overflows the stack on long trajectories.
+ */
+public final class TrajectorySimplifier {
+
+  private TrajectorySimplifier() {}
+
+  /**
+   *
+   * @param lats the latitudes in degrees
+   * @param lngs the longitudes in degrees
+   * @param length the amount of positions to consider
+   * @param tolerance the maximum distance in meters of a removed position to the simplified trajectory. A
+   *        value of 0 or less keeps all positions.
+   * @return the ascending indices of the kept positions. The first and last position are always kept.
+   */
+  public static int[] simplify(final double[] lats, final double[] lngs, final int length,
+      final double tolerance) {
+
+    if (length <= 2 || !(tolerance > 0)) {
+      final int[] all = new int[Math.max(0, length)];
+      for (int i = 0; i < all.length; i++) {
+        all[i] = i;
+      }
+      return all;
+    }
+
+    // Project to meters relative to the first position, longitudes are unwrapped at the antimeridian
+    final double scaleY = GeoDistance.METERS_PER_DEGREE;
+    final double scaleX = scaleY * Math.cos(Math.toRadians(lats[0]));
+    final double[] xs = new double[length];
+    final double[] ys = new double[length];
+    for (int i = 0; i < length; i++) {
+      double dLng = lngs[i] - lngs[0];
+      if (dLng > 180)
+        dLng -= 360;
+      else if (dLng < -180)
+        dLng += 360;
+      xs[i] = dLng * scaleX;
+      ys[i] = (lats[i] - lats[0]) * scaleY;
+    }
+
+    final double toleranceSquared = tolerance * tolerance;
+    final boolean[] keep = new boolean[length];
+    keep[0] = true;
+    keep[length - 1] = true;
+    int kept = 2;
+
+    // The pending ranges never overlap, so there are less than length of them at any time
+    final int[] stack = new int[2 * length];
+    int top = 0;
+    stack[top++] = 0;
+    stack[top++] = length - 1;
+
+    while (top > 0) {
+
+      final int last = stack[--top];
+      final int first = stack[--top];
+
+      double maxDistance = -1;
+      int index = -1;
+      for (int i = first + 1; i < last; i++) {
+        final double distance = segmentDistanceSquared(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+        if (distance > maxDistance) {
+          maxDistance = distance;
+          index = i;
+        }
+      }
+
+      if (index >= 0 && maxDistance > toleranceSquared) {
+        keep[index] = true;
+        kept++;
+        if (index - first > 1) {
+          stack[top++] = first;
+          stack[top++] = index;
+        }
+        if (last - index > 1) {
+          stack[top++] = index;
+          stack[top++] = last;
+        }
+      }
+    }
+
+    final int[] result = new int[kept];
+    int next = 0;
+    for (int i = 0; i < length; i++) {
+      if (keep[i])
+        result[next++] = i;
+    }
+    return result;
+  }
+
+  /*
+   * The squared distance of point p to the segment from a to b.
+   */
+  private static double segmentDistanceSquared(final double px, final double py, final double ax,
+      final double ay, final double bx, final double by) {
+
+    final double dx = bx - ax;
+    final double dy = by - ay;
+    final double lengthSquared = dx * dx + dy * dy;
+
+    double t = 0;
+    if (lengthSquared > 0)
+      t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+
+    final double ex = px - (ax + t * dx);
+    final double ey = py - (ay + t * dy);
+    return ex * ex + ey * ey;
+  }
+}
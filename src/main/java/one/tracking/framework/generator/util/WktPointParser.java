@@ -0,0 +1,89 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.util;
+
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ * Minimal parser for two dimensional WKT points like <code>POINT (x y)</code> as written by the
+ * export. It avoids the tokenizer overhead of the generic WKT reader for the single geometry type
+ * used within the CSV storage.
+ */
+public final class WktPointParser {
+
+  private static final String POINT = "POINT";
+
+  private WktPointParser() {}
+
+  /**
+   *
+   * @param wkt the WKT representation of a two dimensional point
+   * @return the {@link Coordinate} of the point
+   * @throws IllegalArgumentException if the given text is no valid two dimensional WKT point
+   */
+  public static Coordinate parse(final String wkt) {
+
+    if (wkt == null)
+      throw new IllegalArgumentException("Invalid point: null");
+
+    final int length = wkt.length();
+    int index = skipWhitespace(wkt, 0);
+
+    if (!wkt.regionMatches(true, index, POINT, 0, POINT.length()))
+      throw invalid(wkt);
+    index = skipWhitespace(wkt, index + POINT.length());
+
+    if (index >= length || wkt.charAt(index) != '(')
+      throw invalid(wkt);
+    index = skipWhitespace(wkt, index + 1);
+
+    final int xStart = index;
+    index = skipNumber(wkt, index);
+    if (index == xStart)
+      throw invalid(wkt);
+    final int xEnd = index;
+
+    index = skipWhitespace(wkt, index);
+    final int yStart = index;
+    index = skipNumber(wkt, index);
+    if (index == yStart || yStart == xEnd)
+      throw invalid(wkt);
+    final int yEnd = index;
+
+    index = skipWhitespace(wkt, index);
+    if (index >= length || wkt.charAt(index) != ')')
+      throw invalid(wkt);
+    if (skipWhitespace(wkt, index + 1) != length)
+      throw invalid(wkt);
+
+    try {
+      return new Coordinate(
+          Double.parseDouble(wkt.substring(xStart, xEnd)),
+          Double.parseDouble(wkt.substring(yStart, yEnd)));
+    } catch (final NumberFormatException e) {
+      throw invalid(wkt);
+    }
+  }
+
+  private static int skipWhitespace(final String text, int index) {
+    while (index < text.length() && Character.isWhitespace(text.charAt(index))) {
+      index++;
+    }
+    return index;
+  }
+
+  private static int skipNumber(final String text, int index) {
+    while (index < text.length()) {
+      final char c = text.charAt(index);
+      if ((c < '0' || c > '9') && c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E')
+        break;
+      index++;
+    }
+    return index;
+  }
+
+  private static IllegalArgumentException invalid(final String wkt) {
+    return new IllegalArgumentException("Invalid point: " + wkt);
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates bounded pools of worker threads, so blocking or CPU heavy tasks do not run on the common
+ * fork join pool shared with parallel streams.
+ */
+public final class WorkerPool {
+
+  private WorkerPool() {}
+
+  /**
+   * Creates a fixed amount of daemon threads with a bounded queue of tasks. If all workers are busy and
+   * the queue is full, the submitting thread runs the task itself to apply backpressure.
+   *
+   * @param name the prefix of the names of the threads
+   * @param workers the amount of threads. Minimum: 1
+   * @return the pool, which must be shut down by the caller
+   */
+  public static ThreadPoolExecutor create(final String name, final int workers) {
+
+    final int poolSize = Math.max(1, workers);
+
+    final AtomicInteger threadCount = new AtomicInteger(0);
+    return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(poolSize * 4),
+        runnable -> {
+          final Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+}
@@ -0,0 +1,45 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.web;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import one.tracking.framework.generator.service.Encounter;
+import one.tracking.framework.generator.service.EncounterService;
+
+@RestController
+@RequestMapping
+public class EncounterController {
+
+  @Autowired
+  private EncounterService encounterService;
+
+  /**
+   *
+   * @param distance the maximum distance in meters
+   * @param window the maximum time between the events of an encounter in seconds
+   * @param from the inclusive start of the time range of events to consider
+   * @param to the exclusive end of the time range of events to consider
+   * @return the encounters ordered by their first contact
+   */
+  @RequestMapping("/encounters")
+  public List<Encounter> findEncounters(
+      @RequestParam(name = "distance", defaultValue = "2") final double distance,
+      @RequestParam(name = "window", defaultValue = "300") final long window,
+      @RequestParam(name = "from", required = false) final Instant from,
+      @RequestParam(name = "to", required = false) final Instant to) {
+
+    if (distance < 0 || window < 0)
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "distance and window must not be negative");
+
+    return this.encounterService.findEncounters(distance, Duration.ofSeconds(window), from, to);
+  }
+}
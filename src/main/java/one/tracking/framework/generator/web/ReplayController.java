@@ -0,0 +1,88 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.web;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import one.tracking.framework.generator.repo.TrackPoint;
+import one.tracking.framework.generator.service.ReplayService;
+import one.tracking.framework.generator.service.ReplayService.ReplaySink;
+
+@RestController
+@RequestMapping
+public class ReplayController {
+
+  private static final String EVENT_STREAM = "text/event-stream";
+
+  @Autowired
+  private ReplayService replayService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  /**
+   * Replays the persisted events ordered by timestamp as server-sent events. Each event is sent as
+   * <code>data: {"userId": id, "timestamp": t, "offset": s, "lat": lat, "lng": lng}</code>.
+   *
+   * @param speed the factor to accelerate the replay by. 1 replays in real time, 0 as fast as possible.
+   * @param from the inclusive start of the time range of events to replay
+   * @param to the exclusive end of the time range of events to replay
+   */
+  @RequestMapping("/replay")
+  public void replay(
+      @RequestParam(name = "speed", defaultValue = "1") final double speed,
+      @RequestParam(name = "from", required = false) final Instant from,
+      @RequestParam(name = "to", required = false) final Instant to,
+      final HttpServletResponse response) throws IOException {
+
+    if (!(speed >= 0))
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "speed must not be negative");
+
+    response.setContentType(EVENT_STREAM);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    response.setHeader("Cache-Control", "no-cache");
+
+    try (final Writer writer = new BufferedWriter(
+        new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        final JsonGenerator json = this.objectMapper.getFactory().createGenerator(writer)) {
+
+      // Every event is a separate line, not a sequence of root values
+      json.setRootValueSeparator(null);
+
+      this.replayService.replay(from, to, speed, new ReplaySink() {
+
+        @Override
+        public void emit(final TrackPoint event) throws IOException {
+          json.writeRaw("data: ");
+          json.writeStartObject();
+          json.writeStringField("userId", event.getUserId());
+          json.writeStringField("timestamp", event.getTimestampCreate().toString());
+          json.writeNumberField("offset", event.getTimestampOffset());
+          json.writeNumberField("lat", event.getLocation().getY());
+          json.writeNumberField("lng", event.getLocation().getX());
+          json.writeEndObject();
+          json.writeRaw("\n\n");
+        }
+
+        @Override
+        public void flush() throws IOException {
+          json.flush();
+        }
+      });
+    }
+  }
+}
@@ -1,37 +1,161 @@
-/**
- *
- */
-package one.tracking.framework.generator.web;
-
-import java.util.List;
-import java.util.stream.Collectors;
-import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Point;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
-import one.tracking.framework.generator.entity.SpatialEvent;
-import one.tracking.framework.generator.repo.SpatialEventRepository;
-
-/**
- * @author Marko Voß
- *
- */
-@RestController
-@RequestMapping
-public class WebController {
-
-  @Autowired
-  private SpatialEventRepository repo;
-
-  @RequestMapping("/find")
-  public List<Coordinate> findCloseEvents() {
-    return this.repo.findAllWithin(5d).stream().map(SpatialEvent::getLocation).map(Point::getCoordinate)
-        .collect(Collectors.toList());
-  }
-
-  @RequestMapping("/dist")
-  public List<Double> findDistances() {
-    return this.repo.findAllWithin();
-  }
-}
+/**
+ *
+ */
+package one.tracking.framework.generator.web;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import javax.servlet.http.HttpServletResponse;
+import org.locationtech.jts.geom.Coordinate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import one.tracking.framework.generator.index.SpatialEventIndex;
+import one.tracking.framework.generator.service.DistanceFilter;
+import one.tracking.framework.generator.service.DistancePairs;
+import one.tracking.framework.generator.service.DistanceService;
+import one.tracking.framework.generator.util.DistanceHistogram;
+
+/**
+ * @author Marko Voß
+ *
+ */
+@RestController
+@RequestMapping
+public class WebController {
+
+  private static final int MAX_LIMIT = 100000;
+
+  /*
+   * In the units of the coordinates (degrees)
+   */
+  private static final double MAX_DISTANCE = 0.1;
+
+  private static final int MAX_BINS = 1000;
+
+  private static final double HISTOGRAM_RELATIVE_ERROR = 0.01;
+
+  private static final double[] PERCENTILES = {50, 90, 95, 99};
+
+  @Autowired
+  private DistanceService distanceService;
+
+  @Autowired
+  private SpatialEventIndex index;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @RequestMapping("/find")
+  public List<Coordinate> findCloseEvents(@RequestParam(name = "distance", defaultValue = "5") final double distance) {
+    return this.index.findCloseEvents(distance);
+  }
+
+  /**
+   * Streams the distances between pairs of events as JSON. The pairs are written as an array of
+   * <code>{"first": id, "second": id, "distance": d}</code> objects ordered by the ids. The next page
+   * is requested by passing the ids of the last pair as <code>afterFirst</code> and
+   * <code>afterSecond</code>. In summary mode all matching pairs are aggregated in one pass into count,
+   * min, max, mean, approximated percentiles and a histogram of equal width bins instead. Requests
+   * are rejected if more than <code>app.dist.max.events</code> events are created within their time range.
+   */
+  @RequestMapping("/dist")
+  public void findDistances(
+      @RequestParam(name = "user", required = false) final String userId,
+      @RequestParam(name = "from", required = false) final Instant from,
+      @RequestParam(name = "to", required = false) final Instant to,
+      @RequestParam(name = "maxDistance", defaultValue = "0.01") final double maxDistance,
+      @RequestParam(name = "afterFirst", defaultValue = "0") final long afterFirst,
+      @RequestParam(name = "afterSecond", defaultValue = "0") final long afterSecond,
+      @RequestParam(name = "limit", defaultValue = "1000") final int limit,
+      @RequestParam(name = "summary", defaultValue = "false") final boolean summary,
+      @RequestParam(name = "bins", defaultValue = "20") final int bins,
+      final HttpServletResponse response) throws IOException {
+
+    if (limit < 1 || limit > MAX_LIMIT)
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be within [1, " + MAX_LIMIT + "]");
+    if (!(maxDistance >= 0 && maxDistance <= MAX_DISTANCE))
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "maxDistance must be within [0, " + MAX_DISTANCE + "]");
+    if (bins < 1 || bins > MAX_BINS)
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "bins must be within [1, " + MAX_BINS + "]");
+
+    final DistanceFilter filter = DistanceFilter.builder()
+        .userId(userId)
+        .from(from)
+        .to(to)
+        .maxDistance(maxDistance)
+        .build();
+
+    final DistancePairs pairs;
+    try {
+      pairs = this.distanceService.load(filter);
+    } catch (final IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+    }
+
+    response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+
+    try (final JsonGenerator json = this.objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+
+      if (summary) {
+        final DistanceHistogram histogram = new DistanceHistogram(HISTOGRAM_RELATIVE_ERROR);
+        pairs.forEach(0, 0, 0, (firstId, secondId, distance) -> histogram.add(distance));
+        writeSummary(json, histogram, bins);
+
+      } else {
+        json.writeStartArray();
+        pairs.forEach(afterFirst, afterSecond, limit, (firstId, secondId, distance) -> {
+          json.writeStartObject();
+          json.writeNumberField("first", firstId);
+          json.writeNumberField("second", secondId);
+          json.writeNumberField("distance", distance);
+          json.writeEndObject();
+        });
+        json.writeEndArray();
+      }
+    }
+  }
+
+  private void writeSummary(final JsonGenerator json, final DistanceHistogram histogram, final int bins)
+      throws IOException {
+
+    json.writeStartObject();
+    json.writeNumberField("count", histogram.getCount());
+
+    if (histogram.getCount() > 0) {
+
+      json.writeNumberField("min", histogram.getMin());
+      json.writeNumberField("max", histogram.getMax());
+      json.writeNumberField("mean", histogram.getMean());
+
+      json.writeObjectFieldStart("percentiles");
+      for (final double percentile : PERCENTILES) {
+        json.writeNumberField("p" + (int) percentile, histogram.getPercentile(percentile));
+      }
+      json.writeEndObject();
+
+      final long[] counts = histogram.toBins(bins);
+      final double width = (histogram.getMax() - histogram.getMin()) / counts.length;
+
+      json.writeArrayFieldStart("histogram");
+      for (int i = 0; i < counts.length; i++) {
+        json.writeStartObject();
+        json.writeNumberField("from", histogram.getMin() + i * width);
+        json.writeNumberField("to", i == counts.length - 1 ? histogram.getMax() : histogram.getMin() + (i + 1) * width);
+        json.writeNumberField("count", counts[i]);
+        json.writeEndObject();
+      }
+      json.writeEndArray();
+    }
+
+    json.writeEndObject();
+  }
+}
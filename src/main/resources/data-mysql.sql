@@ -0,0 +1 @@
+CREATE SPATIAL INDEX idx_spatial_event_location ON spatial_event (location);
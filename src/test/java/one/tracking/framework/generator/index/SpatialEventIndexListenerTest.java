@@ -0,0 +1,126 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import one.tracking.framework.generator.entity.SpatialEvent;
+
+public class SpatialEventIndexListenerTest {
+
+  private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+
+  private final SpatialEventIndex index = new SpatialEventIndex(0.001);
+
+  private final SpatialEventIndexListener listener = new SpatialEventIndexListener();
+
+  @Before
+  public void injectIndex() {
+    ReflectionTestUtils.setField(this.listener, "index", this.index);
+  }
+
+  @After
+  public void clearSynchronization() {
+    if (TransactionSynchronizationManager.isSynchronizationActive())
+      TransactionSynchronizationManager.clearSynchronization();
+    TransactionSynchronizationManager.unbindResourceIfPossible(this.index);
+  }
+
+  @Test
+  public void appliesChangesWithoutTransactionAtOnce() {
+
+    this.listener.onPersist(event(1, 13.4, 52.5));
+    assertEquals(1, this.index.size());
+
+    this.listener.onRemove(event(1, 13.4, 52.5));
+    assertEquals(0, this.index.size());
+  }
+
+  @Test
+  public void appliesChangesAfterCommit() {
+
+    this.index.add(1, 13.4, 52.5);
+    TransactionSynchronizationManager.initSynchronization();
+
+    this.listener.onPersist(event(2, 13.4001, 52.5));
+    this.listener.onPersist(event(3, 13.5, 52.5));
+    this.listener.onRemove(event(1, 13.4, 52.5));
+
+    // Not visible before the transaction has been committed
+    assertEquals(1, this.index.size());
+    assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+
+    complete(TransactionSynchronization.STATUS_COMMITTED);
+
+    assertEquals(2, this.index.size());
+    assertEquals(0, this.index.findCloseEvents(0.001).size());
+    assertFalse(TransactionSynchronizationManager.hasResource(this.index));
+  }
+
+  @Test
+  public void discardsChangesOnRollback() {
+
+    TransactionSynchronizationManager.initSynchronization();
+
+    this.listener.onPersist(event(1, 13.4, 52.5));
+    complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+    assertEquals(0, this.index.size());
+    assertFalse(TransactionSynchronizationManager.hasResource(this.index));
+
+    // The next transaction starts without the changes of the previous one
+    TransactionSynchronizationManager.initSynchronization();
+
+    this.listener.onPersist(event(2, 13.4, 52.5));
+    complete(TransactionSynchronization.STATUS_COMMITTED);
+
+    assertEquals(1, this.index.size());
+  }
+
+  @Test
+  public void ignoresEventsWithoutId() {
+
+    this.listener.onPersist(SpatialEvent.builder()
+        .location(this.geometryFactory.createPoint(new Coordinate(13.4, 52.5)))
+        .build());
+
+    assertEquals(0, this.index.size());
+  }
+
+  /*
+   * Completes the transaction like the transaction manager does
+   */
+  private static void complete(final int status) {
+
+    final List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+    TransactionSynchronizationManager.clearSynchronization();
+
+    if (status == TransactionSynchronization.STATUS_COMMITTED) {
+      for (final TransactionSynchronization synchronization : synchronizations) {
+        synchronization.afterCommit();
+      }
+    }
+    for (final TransactionSynchronization synchronization : synchronizations) {
+      synchronization.afterCompletion(status);
+    }
+  }
+
+  private SpatialEvent event(final long id, final double x, final double y) {
+    return SpatialEvent.builder()
+        .id(id)
+        .userId("user")
+        .location(this.geometryFactory.createPoint(new Coordinate(x, y)))
+        .build();
+  }
+}
@@ -0,0 +1,137 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+public class SpatialEventIndexTest {
+
+  private static final double CELL_SIZE = 0.001;
+
+  private final List<Coordinate> events = new ArrayList<>();
+
+  @Test
+  public void findsCloseEventsWithinCellNeighborhood() {
+    assertMatchesPairwiseComparison(createRandomIndex(2000, 0.05, 1), 0.0005);
+  }
+
+  @Test
+  public void findsCloseEventsWithinCellSizeAndDiagonal() {
+    assertMatchesPairwiseComparison(createRandomIndex(2000, 0.05, 2), CELL_SIZE);
+    assertMatchesPairwiseComparison(createRandomIndex(2000, 0.05, 3), CELL_SIZE * Math.sqrt(2));
+  }
+
+  @Test
+  public void findsCloseEventsOfLargeDistanceUsingCoarseCells() {
+    // Beyond two cells the occupied cells are grouped into coarser cells first
+    assertMatchesPairwiseComparison(createRandomIndex(1000, 0.5, 4), 0.0035);
+    assertMatchesPairwiseComparison(createRandomIndex(1000, 0.5, 5), 0.02);
+    assertMatchesPairwiseComparison(createRandomIndex(200, 10, 6), 0.5);
+  }
+
+  @Test
+  public void findsCloseEventsAroundOrigin() {
+    // Cells of negative coordinates
+    final SpatialEventIndex index = new SpatialEventIndex(CELL_SIZE);
+    final Random random = new Random(7);
+    for (int id = 0; id < 200; id++) {
+      add(index, id, random.nextDouble() * 0.04 - 0.02, random.nextDouble() * 0.04 - 0.02);
+    }
+    assertMatchesPairwiseComparison(index, 0.0007);
+    assertMatchesPairwiseComparison(index, 0.0025);
+  }
+
+  @Test
+  public void findsEventsAtSameLocation() {
+
+    final SpatialEventIndex index = new SpatialEventIndex(CELL_SIZE);
+    index.add(1, 13.4, 52.5);
+    index.add(2, 13.4, 52.5);
+    index.add(3, 13.41, 52.5);
+
+    final List<Coordinate> close = index.findCloseEvents(0);
+
+    assertEquals(2, close.size());
+    for (final Coordinate coordinate : close) {
+      assertEquals(13.4, coordinate.x, 0);
+    }
+  }
+
+  @Test
+  public void removesEvents() {
+
+    final List<double[]> changes = new ArrayList<>();
+    final SpatialEventIndex index = new SpatialEventIndex(CELL_SIZE);
+    index.addChangeListener((x, y) -> changes.add(new double[] {x, y}));
+
+    index.add(1, 13.4, 52.5);
+    index.add(2, 13.4001, 52.5);
+    assertEquals(2, index.size());
+    assertEquals(2, index.findCloseEvents(0.001).size());
+
+    index.remove(2, 13.4001, 52.5);
+    assertEquals(1, index.size());
+    assertTrue(index.findCloseEvents(0.001).isEmpty());
+
+    // Unknown events are ignored without notifying the listeners
+    index.remove(3, 13.4, 52.5);
+    assertEquals(1, index.size());
+    assertEquals(3, changes.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyCells() {
+    new SpatialEventIndex(0);
+  }
+
+  private SpatialEventIndex createRandomIndex(final int amount, final double extent, final long seed) {
+    this.events.clear();
+    final SpatialEventIndex index = new SpatialEventIndex(CELL_SIZE);
+    final Random random = new Random(seed);
+    for (int id = 0; id < amount; id++) {
+      add(index, id, 13.4 + random.nextDouble() * extent, 52.5 + random.nextDouble() * extent);
+    }
+    return index;
+  }
+
+  private void add(final SpatialEventIndex index, final long id, final double x, final double y) {
+    index.add(id, x, y);
+    this.events.add(new Coordinate(x, y));
+  }
+
+  private void assertMatchesPairwiseComparison(final SpatialEventIndex index, final double distance) {
+
+    final List<Coordinate> events = this.events;
+    assertEquals(events.size(), index.size());
+
+    final Set<String> expected = new HashSet<>();
+    for (int i = 0; i < events.size(); i++) {
+      for (int j = 0; j < events.size(); j++) {
+        final double dx = events.get(i).x - events.get(j).x;
+        final double dy = events.get(i).y - events.get(j).y;
+        if (i != j && dx * dx + dy * dy <= distance * distance) {
+          expected.add(events.get(i).x + " " + events.get(i).y);
+          break;
+        }
+      }
+    }
+
+    final Set<String> actual = new HashSet<>();
+    for (final Coordinate coordinate : index.findCloseEvents(distance)) {
+      assertTrue(actual.add(coordinate.x + " " + coordinate.y));
+    }
+
+    assertTrue(expected.size() > 0);
+    assertTrue(expected.size() < events.size());
+    assertEquals(expected, actual);
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.routing;
+
+import static org.junit.Assert.assertEquals;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import one.tracking.framework.generator.util.GeoDistance;
+import one.tracking.framework.generator.util.PolylineEncoderDecoder.CoordinateBuffer;
+
+public class RoadGraphTest {
+
+  private Path osmFile;
+
+  private Path graphFile;
+
+  @Before
+  public void createFiles() throws IOException {
+    this.osmFile = Files.createTempFile("extract", ".osm");
+    this.graphFile = Files.createTempFile("road", ".graph");
+  }
+
+  @After
+  public void deleteFiles() throws IOException {
+    Files.deleteIfExists(this.osmFile);
+    Files.deleteIfExists(this.graphFile);
+  }
+
+  @Test
+  public void routesOnWalkableWaysOnly() throws IOException {
+
+    final RoadGraph graph = build("<osm>"
+        + node(1, 52.520, 13.400) + node(2, 52.520, 13.410) + node(3, 52.530, 13.410) + node(4, 52.530, 13.400)
+        + node(5, 52.600, 13.400) + node(6, 52.600, 13.410) + node(7, 52.700, 13.400)
+        + way("<tag k=\"highway\" v=\"footway\"/>", 1, 2, 3)
+        + way("<tag k=\"highway\" v=\"residential\"/>", 1, 4)
+        // Not walkable
+        + way("<tag k=\"highway\" v=\"motorway\"/>", 1, 3)
+        + way("<tag k=\"highway\" v=\"path\"/><tag k=\"foot\" v=\"no\"/>", 4, 3)
+        + way("<tag k=\"highway\" v=\"service\"/><tag k=\"access\" v=\"private\"/>", 2, 4)
+        + way("<tag k=\"building\" v=\"yes\"/>", 2, 4)
+        // Not connected to the largest component
+        + way("<tag k=\"highway\" v=\"footway\"/>", 5, 6)
+        + "</osm>");
+
+    assertEquals(4, graph.getNodeCount());
+
+    final CoordinateBuffer path = graph.route(52.5201, 13.4001, 52.5299, 13.4099);
+    assertEquals(5, path.size());
+    assertPosition(path, 0, 52.5201, 13.4001);
+    assertPosition(path, 1, 52.520, 13.400);
+    assertPosition(path, 2, 52.520, 13.410);
+    assertPosition(path, 3, 52.530, 13.410);
+    assertPosition(path, 4, 52.5299, 13.4099);
+
+    final CoordinateBuffer detour = graph.route(52.530, 13.400, 52.530, 13.410);
+    assertEquals(6, detour.size());
+    assertPosition(detour, 2, 52.520, 13.400);
+    assertPosition(detour, 3, 52.520, 13.410);
+  }
+
+  @Test
+  public void findsNearestNode() throws IOException {
+
+    final RoadGraph graph = build("<osm>"
+        + node(1, 52.520, 13.400) + node(2, 52.520, 13.410) + node(3, 52.530, 13.410)
+        + way("<tag k=\"highway\" v=\"footway\"/>", 1, 2, 3)
+        + "</osm>");
+
+    assertNode(graph, graph.findNearestNode(52.521, 13.401), 52.520, 13.400);
+    assertNode(graph, graph.findNearestNode(52.521, 13.409), 52.520, 13.410);
+    assertNode(graph, graph.findNearestNode(53, 14), 52.530, 13.410);
+  }
+
+  @Test
+  public void findsShortestPathInGrid() throws IOException {
+
+    final int size = 10;
+    final double spacing = 0.001;
+
+    final StringBuilder osm = new StringBuilder("<osm>");
+    for (int row = 0; row < size; row++) {
+      for (int column = 0; column < size; column++) {
+        osm.append(node(row * size + column + 1, 52.5 + row * spacing, 13.4 + column * spacing));
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      final long[] row = new long[size];
+      final long[] column = new long[size];
+      for (int j = 0; j < size; j++) {
+        row[j] = i * size + j + 1;
+        column[j] = j * size + i + 1;
+      }
+      osm.append(way("<tag k=\"highway\" v=\"footway\"/>", row));
+      osm.append(way("<tag k=\"highway\" v=\"footway\"/>", column));
+    }
+    osm.append("</osm>");
+
+    final RoadGraph graph = build(osm.toString());
+    final double endLat = 52.5 + (size - 1) * spacing;
+    final double endLng = 13.4 + (size - 1) * spacing;
+
+    final CoordinateBuffer path = graph.route(52.5, 13.4, endLat, endLng);
+
+    // Each step moves by one node, so the path has the length of the shortest path along the grid
+    assertEquals(2 * (size - 1) + 1 + 2, path.size());
+    double length = 0;
+    for (int i = 1; i < path.size(); i++) {
+      length += GeoDistance.haversine(path.getLat(i - 1), path.getLng(i - 1), path.getLat(i), path.getLng(i));
+    }
+    final double expected = GeoDistance.haversine(52.5, 13.4, endLat, 13.4)
+        + GeoDistance.haversine(52.5, 13.4, 52.5, endLng);
+    assertEquals(expected, length, 1);
+  }
+
+  private RoadGraph build(final String osm) throws IOException {
+    Files.write(this.osmFile, osm.getBytes(StandardCharsets.UTF_8));
+    new OsmGraphBuilder().build(this.osmFile, this.graphFile);
+    return RoadGraph.load(this.graphFile);
+  }
+
+  private static String node(final long id, final double lat, final double lng) {
+    return "<node id=\"" + id + "\" lat=\"" + lat + "\" lon=\"" + lng + "\"/>";
+  }
+
+  private static String way(final String tags, final long... nodes) {
+    final StringBuilder way = new StringBuilder("<way>");
+    for (final long node : nodes) {
+      way.append("<nd ref=\"").append(node).append("\"/>");
+    }
+    return way.append(tags).append("</way>").toString();
+  }
+
+  private static void assertPosition(final CoordinateBuffer path, final int index, final double lat,
+      final double lng) {
+    assertEquals(lat, path.getLat(index), 1e-7);
+    assertEquals(lng, path.getLng(index), 1e-7);
+  }
+
+  private static void assertNode(final RoadGraph graph, final int node, final double lat, final double lng) {
+    assertEquals(lat, graph.getLat(node), 1e-7);
+    assertEquals(lng, graph.getLng(node), 1e-7);
+  }
+}
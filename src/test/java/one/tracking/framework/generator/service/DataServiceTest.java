@@ -0,0 +1,137 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.springframework.test.util.ReflectionTestUtils;
+import one.tracking.framework.generator.entity.SpatialEvent;
+import one.tracking.framework.generator.repo.SpatialEventRepository;
+
+public class DataServiceTest {
+
+  private static final int USERS = 7;
+
+  private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+
+  private final PopulationModel populationModel = new PopulationModel();
+
+  private final SyntheticRouteProvider routeProvider = new SyntheticRouteProvider();
+
+  @Before
+  public void configure() {
+
+    ReflectionTestUtils.setField(this.populationModel, "envelope",
+        new Envelope(52.40068, 52.59496, 13.22866, 13.60024));
+    ReflectionTestUtils.setField(this.populationModel, "travelsPerDay", 3);
+    ReflectionTestUtils.setField(this.populationModel, "startTime", "07:30");
+    ReflectionTestUtils.setField(this.populationModel, "startDeviation", 60);
+    ReflectionTestUtils.setField(this.populationModel, "workStay", 480);
+    ReflectionTestUtils.setField(this.populationModel, "leisureStay", 90);
+    ReflectionTestUtils.invokeMethod(this.populationModel, "init");
+
+    ReflectionTestUtils.setField(this.routeProvider, "workers", 4);
+    ReflectionTestUtils.setField(this.routeProvider, "blockLength", 100);
+    ReflectionTestUtils.setField(this.routeProvider, "straightness", 0.7);
+    ReflectionTestUtils.setField(this.routeProvider, "jitter", 5);
+    ReflectionTestUtils.invokeMethod(this.routeProvider, "init");
+  }
+
+  @After
+  public void shutdown() throws Exception {
+    this.routeProvider.destroy();
+  }
+
+  @Test
+  public void shardsTogetherGenerateEventsOfSingleRun() {
+
+    final Map<String, List<String>> single = generate("42", 0, 1);
+
+    final Map<String, List<String>> sharded = new HashMap<>();
+    for (int shard = 0; shard < 3; shard++) {
+      generate("42", shard, 3).forEach((userId, events) -> {
+        // Every user is generated by a single shard only
+        assertNull(sharded.put(userId, events));
+      });
+    }
+
+    assertEquals(USERS, single.size());
+    single.values().forEach(events -> assertFalse(events.isEmpty()));
+    assertEquals(single, sharded);
+  }
+
+  @Test
+  public void reproducesRunFromSeed() {
+    assertEquals(generate("42", 0, 1), generate("42", 0, 1));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsShardedRunWithoutSeed() {
+    generate("", 0, 2);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsInvalidShard() {
+    generate("42", 2, 2);
+  }
+
+  /*
+   * The events of each user in the order they are persisted
+   */
+  private Map<String, List<String>> generate(final String seed, final int shardIndex, final int shardCount) {
+
+    final Map<String, List<String>> events = new ConcurrentHashMap<>();
+
+    final SpatialEventRepository repository = mock(SpatialEventRepository.class);
+    doAnswer(invocation -> {
+      final Collection<SpatialEvent> route = invocation.getArgument(0);
+      for (final SpatialEvent event : route) {
+        events.computeIfAbsent(event.getUserId(), userId -> Collections.synchronizedList(new ArrayList<>()))
+            .add(event.getTimestampCreate() + " " + event.getTimestampOffset() + " " + event.getLocation().getX()
+                + " " + event.getLocation().getY());
+      }
+      return null;
+    }).when(repository).persistAll(any());
+
+    final DataService service = new DataService();
+    ReflectionTestUtils.setField(service, "repository", repository);
+    ReflectionTestUtils.setField(service, "geometryFactory", this.geometryFactory);
+    ReflectionTestUtils.setField(service, "routeProvider", this.routeProvider);
+    ReflectionTestUtils.setField(service, "populationModel", this.populationModel);
+    ReflectionTestUtils.setField(service, "formatter", DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+    ReflectionTestUtils.setField(service, "amountOfUsers", USERS);
+    ReflectionTestUtils.setField(service, "amountOfDays", 2);
+    ReflectionTestUtils.setField(service, "startDate", "2020-03-10");
+    // Partitions do not line up with the shards
+    ReflectionTestUtils.setField(service, "partitionSize", 2);
+    ReflectionTestUtils.setField(service, "seed", seed);
+    ReflectionTestUtils.setField(service, "shardIndex", shardIndex);
+    ReflectionTestUtils.setField(service, "shardCount", shardCount);
+    ReflectionTestUtils.setField(service, "simplifyTolerance", 5);
+    ReflectionTestUtils.setField(service, "speedMean", 1.4);
+    ReflectionTestUtils.setField(service, "speedDeviation", 0.2);
+    ReflectionTestUtils.setField(service, "samplingInterval", 10);
+
+    ReflectionTestUtils.invokeMethod(service, "generateData");
+    return events;
+  }
+}
@@ -0,0 +1,174 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import one.tracking.framework.generator.repo.SpatialEventRepository;
+import one.tracking.framework.generator.repo.SpatialEventRepositoryCustom.LocationVisitor;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DistanceServiceTest {
+
+  private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+
+  private final List<Event> events = new ArrayList<>();
+
+  @Mock
+  private SpatialEventRepository repository;
+
+  @InjectMocks
+  private DistanceService service;
+
+  @Before
+  public void setMaxEvents() {
+    ReflectionTestUtils.setField(this.service, "maxEvents", 10000);
+  }
+
+  @Test
+  public void findsPairsOrderedByIds() throws IOException {
+
+    add(1, "a", 13.4, 52.5);
+    add(2, "b", 13.4, 52.5005);
+    add(5, "c", 13.4005, 52.5);
+    // Too far away
+    add(6, "a", 13.41, 52.5);
+
+    final List<String> pairs = new ArrayList<>();
+    final long count = load(null, 0.001).forEach(0, 0, 0,
+        (firstId, secondId, distance) -> pairs.add(firstId + "/" + secondId + ":" + Math.round(distance * 1e4)));
+
+    assertEquals(3, count);
+    assertEquals("[1/2:5, 1/5:5, 2/5:7]", pairs.toString());
+  }
+
+  @Test
+  public void findsPairsOfUser() throws IOException {
+
+    add(1, "a", 13.4, 52.5);
+    add(2, "b", 13.4, 52.5);
+    add(3, "c", 13.4, 52.5);
+
+    final List<String> pairs = new ArrayList<>();
+    load("c", 0).forEach(0, 0, 0, (firstId, secondId, distance) -> pairs.add(firstId + "/" + secondId));
+
+    assertEquals("[1/3, 2/3]", pairs.toString());
+  }
+
+  @Test
+  public void matchesPairwiseComparison() throws IOException {
+
+    final Random random = new Random(11);
+    long id = 0;
+    for (int i = 0; i < 2000; i++) {
+      id += 1 + random.nextInt(3);
+      add(id, "user" + random.nextInt(10), 13.40 + random.nextDouble() * 0.05, 52.52 + random.nextDouble() * 0.05);
+    }
+
+    for (final String userId : new String[] {null, "user3"}) {
+      for (final double maxDistance : new double[] {0.0005, 0.0013}) {
+
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < this.events.size(); i++) {
+          for (int j = i + 1; j < this.events.size(); j++) {
+            final Event a = this.events.get(i);
+            final Event b = this.events.get(j);
+            if ((userId == null || userId.equals(a.userId) || userId.equals(b.userId))
+                && Math.hypot(a.x - b.x, a.y - b.y) <= maxDistance) {
+              expected.add(a.id + "/" + b.id);
+            }
+          }
+        }
+
+        final DistancePairs pairs = load(userId, maxDistance);
+
+        // Pages continued after the last pair of the previous page
+        final List<String> actual = new ArrayList<>();
+        final long[] last = new long[2];
+        long count;
+        do {
+          count = pairs.forEach(last[0], last[1], 97, (firstId, secondId, distance) -> {
+            actual.add(firstId + "/" + secondId);
+            last[0] = firstId;
+            last[1] = secondId;
+          });
+        } while (count == 97);
+
+        assertTrue(expected.size() > 97);
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), pairs.forEach(0, 0, 0, (firstId, secondId, distance) -> {}));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTooManyEvents() {
+
+    ReflectionTestUtils.setField(this.service, "maxEvents", 2);
+    add(1, "a", 13.4, 52.5);
+    add(2, "b", 13.4, 52.5);
+    add(3, "c", 13.4, 52.5);
+
+    load(null, 0.001);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMissingMaxDistance() {
+    this.service.load(DistanceFilter.builder().build());
+  }
+
+  private DistancePairs load(final String userId, final double maxDistance) {
+
+    doAnswer(invocation -> {
+      final int limit = invocation.getArgument(2);
+      final LocationVisitor visitor = invocation.getArgument(3);
+      long count = 0;
+      for (final Event event : this.events) {
+        if (count == limit)
+          break;
+        visitor.visit(event.id, event.userId, this.geometryFactory.createPoint(new Coordinate(event.x, event.y)));
+        count++;
+      }
+      return count;
+    }).when(this.repository).forEachLocation(any(), any(), anyInt(), any());
+
+    return this.service.load(DistanceFilter.builder().userId(userId).maxDistance(maxDistance).build());
+  }
+
+  private void add(final long id, final String userId, final double x, final double y) {
+    this.events.add(new Event(id, userId, x, y));
+  }
+
+  private static class Event {
+
+    private final long id;
+    private final String userId;
+    private final double x;
+    private final double y;
+
+    private Event(final long id, final String userId, final double x, final double y) {
+      this.id = id;
+      this.userId = userId;
+      this.x = x;
+      this.y = y;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import one.tracking.framework.generator.repo.SpatialEventRepository;
+import one.tracking.framework.generator.repo.SpatialEventRepositoryCustom.EventVisitor;
+import one.tracking.framework.generator.util.GeoDistance;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EncounterServiceTest {
+
+  private static final Instant START = Instant.parse("2020-03-10T08:00:00Z");
+
+  private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+
+  private final List<Event> events = new ArrayList<>();
+
+  @Mock
+  private SpatialEventRepository repository;
+
+  @InjectMocks
+  private EncounterService service;
+
+  @Test
+  public void findsCloseEventsOfDistinctUsers() {
+
+    add("a", 0, 52.52, 13.40);
+    add("b", 30, 52.52002, 13.40);
+    add("b", 90, 52.52004, 13.40);
+    add("a", 100, 52.52004, 13.40001);
+    // Same user and too far away
+    add("a", 0, 52.52001, 13.40);
+    add("c", 0, 52.53, 13.40);
+
+    final List<Encounter> encounters = findEncounters(5, Duration.ofMinutes(1));
+
+    assertEquals(1, encounters.size());
+    final Encounter encounter = encounters.get(0);
+    assertEquals("a", encounter.getUserA());
+    assertEquals("b", encounter.getUserB());
+    assertEquals(START, encounter.getFirstContact());
+    assertEquals(START.plusSeconds(100), encounter.getLastContact());
+    assertEquals(3, encounter.getContacts());
+    assertEquals(GeoDistance.haversine(52.52004, 13.40, 52.52004, 13.40001), encounter.getMinDistance(), 1e-9);
+  }
+
+  @Test
+  public void ignoresEventsOutsideOfWindow() {
+
+    add("a", 0, 52.52, 13.40);
+    add("b", 61, 52.52, 13.40);
+
+    assertTrue(findEncounters(5, Duration.ofMinutes(1)).isEmpty());
+  }
+
+  @Test
+  public void findsEncountersAcrossBucketBorders() {
+
+    // Across the equator, the prime meridian and a time slot border
+    add("a", 59, -0.00001, -0.00001);
+    add("b", 61, 0.00001, 0.00001);
+    // Across the antimeridian
+    add("c", 0, 10, 179.99999);
+    add("d", 0, 10, -179.99999);
+
+    final List<Encounter> encounters = findEncounters(5, Duration.ofMinutes(1));
+
+    assertEquals(2, encounters.size());
+    assertEquals("c", encounters.get(0).getUserA());
+    assertEquals("d", encounters.get(0).getUserB());
+    assertEquals("a", encounters.get(1).getUserA());
+    assertEquals("b", encounters.get(1).getUserB());
+  }
+
+  @Test
+  public void matchesPairwiseComparison() {
+
+    final Random random = new Random(7);
+    for (int i = 0; i < 2000; i++) {
+      add("user" + random.nextInt(20), random.nextInt(3600), 52.52 + random.nextDouble() * 0.005,
+          13.40 + random.nextDouble() * 0.005);
+    }
+
+    final double distance = 25;
+    final Duration window = Duration.ofMinutes(5);
+
+    final Map<String, Long> expected = new HashMap<>();
+    for (int i = 0; i < this.events.size(); i++) {
+      for (int j = i + 1; j < this.events.size(); j++) {
+        final Event a = this.events.get(i);
+        final Event b = this.events.get(j);
+        if (!a.userId.equals(b.userId)
+            && Math.abs(a.seconds - b.seconds) <= window.getSeconds()
+            && GeoDistance.haversine(a.lat, a.lng, b.lat, b.lng) <= distance) {
+          expected.merge(pair(a.userId, b.userId), 1L, Long::sum);
+        }
+      }
+    }
+
+    final Map<String, Long> actual = new HashMap<>();
+    for (final Encounter encounter : findEncounters(distance, window)) {
+      actual.put(pair(encounter.getUserA(), encounter.getUserB()), encounter.getContacts());
+    }
+
+    assertTrue(expected.size() > 0);
+    assertEquals(expected, actual);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeDistance() {
+    this.service.findEncounters(-1, Duration.ofMinutes(1), null, null);
+  }
+
+  private List<Encounter> findEncounters(final double distance, final Duration window) {
+
+    doAnswer(invocation -> {
+      final EventVisitor visitor = invocation.getArgument(2);
+      for (final Event event : this.events) {
+        visitor.visit(event.userId, START.plusSeconds(event.seconds),
+            this.geometryFactory.createPoint(new Coordinate(event.lng, event.lat)));
+      }
+      return (long) this.events.size();
+    }).when(this.repository).forEachEvent(any(), any(), any());
+
+    return this.service.findEncounters(distance, window, null, null);
+  }
+
+  private void add(final String userId, final long seconds, final double lat, final double lng) {
+    this.events.add(new Event(userId, seconds, lat, lng));
+  }
+
+  private static String pair(final String userA, final String userB) {
+    return userA.compareTo(userB) < 0 ? userA + "/" + userB : userB + "/" + userA;
+  }
+
+  private static class Event {
+
+    private final String userId;
+    private final long seconds;
+    private final double lat;
+    private final double lng;
+
+    private Event(final String userId, final long seconds, final double lat, final double lng) {
+      this.userId = userId;
+      this.seconds = seconds;
+      this.lat = lat;
+      this.lng = lng;
+    }
+  }
+}
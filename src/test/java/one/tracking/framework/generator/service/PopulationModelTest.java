@@ -0,0 +1,140 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class PopulationModelTest {
+
+  private static final LocalDate TUESDAY = LocalDate.parse("2020-03-10");
+
+  private static final LocalDate SATURDAY = LocalDate.parse("2020-03-14");
+
+  private final Envelope envelope = new Envelope(52.40068, 52.59496, 13.22866, 13.60024);
+
+  private final PopulationModel model = new PopulationModel();
+
+  @Before
+  public void configure() {
+    ReflectionTestUtils.setField(this.model, "envelope", this.envelope);
+    ReflectionTestUtils.setField(this.model, "travelsPerDay", 4);
+    ReflectionTestUtils.setField(this.model, "startTime", "07:30");
+    ReflectionTestUtils.setField(this.model, "startDeviation", 60);
+    ReflectionTestUtils.setField(this.model, "workStay", 480);
+    ReflectionTestUtils.setField(this.model, "leisureStay", 90);
+    ReflectionTestUtils.invokeMethod(this.model, "init");
+  }
+
+  @Test
+  public void derivesDistinctSeedsPerUser() {
+
+    final Set<Long> seeds = new HashSet<>();
+    for (int user = 0; user < 10000; user++) {
+      seeds.add(PopulationModel.seedOf(42, user));
+    }
+
+    assertEquals(10000, seeds.size());
+    assertEquals(PopulationModel.seedOf(42, 7), PopulationModel.seedOf(42, 7));
+    assertNotEquals(PopulationModel.seedOf(42, 7), PopulationModel.seedOf(43, 7));
+  }
+
+  @Test
+  public void reproducesUsersFromSeed() {
+
+    final long seed = PopulationModel.seedOf(42, 7);
+
+    final Random first = new Random(seed);
+    final Resident resident = this.model.createResident(first);
+    final DayPlan plan = this.model.planDay(resident, TUESDAY, first);
+
+    final Random second = new Random(seed);
+    assertEquals(resident, this.model.createResident(second));
+    assertEquals(plan, this.model.planDay(resident, TUESDAY, second));
+
+    final Resident other = this.model.createResident(new Random(PopulationModel.seedOf(42, 8)));
+    assertFalse(resident.getHome().equals2D(other.getHome()));
+  }
+
+  @Test
+  public void locatesPlacesWithinEnvelope() {
+
+    final Random random = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      final Resident resident = this.model.createResident(random);
+      assertTrue(this.envelope.contains(resident.getHome()));
+      assertTrue(this.envelope.contains(resident.getWork()));
+      for (final Coordinate place : resident.getLeisure()) {
+        assertTrue(this.envelope.contains(place));
+      }
+    }
+  }
+
+  @Test
+  public void plansWorkdays() {
+
+    final Random random = new Random(2);
+    final Resident resident = this.model.createResident(random);
+
+    for (int i = 0; i < 100; i++) {
+      final List<Stop> stops = this.model.planDay(resident, TUESDAY, random).getStops();
+
+      assertEquals(5, stops.size());
+      assertTrue(stops.get(0).getLocation().equals2D(resident.getHome()));
+      assertTrue(stops.get(1).getLocation().equals2D(resident.getWork()));
+      assertTrue(resident.getLeisure().contains(stops.get(2).getLocation()));
+      assertTrue(resident.getLeisure().contains(stops.get(3).getLocation()));
+      assertFalse(stops.get(2).getLocation().equals2D(stops.get(3).getLocation()));
+      assertTrue(stops.get(4).getLocation().equals2D(resident.getHome()));
+
+      for (final Stop stop : stops.subList(1, 4)) {
+        assertTrue(stop.getStay().compareTo(Duration.ofMinutes(5)) >= 0);
+      }
+    }
+  }
+
+  @Test
+  public void plansWeekendsWithoutWork() {
+
+    final Random random = new Random(3);
+    final Resident resident = this.model.createResident(random);
+
+    for (int i = 0; i < 100; i++) {
+      final List<Stop> stops = this.model.planDay(resident, SATURDAY, random).getStops();
+
+      assertEquals(5, stops.size());
+      for (int j = 1; j < 4; j++) {
+        assertTrue(resident.getLeisure().contains(stops.get(j).getLocation()));
+        assertFalse(stops.get(j).getLocation().equals2D(stops.get(j - 1).getLocation()));
+      }
+      assertTrue(stops.get(4).getLocation().equals2D(resident.getHome()));
+    }
+  }
+
+  @Test
+  public void plansSingleTravelToWork() {
+
+    ReflectionTestUtils.setField(this.model, "travelsPerDay", 1);
+
+    final Random random = new Random(4);
+    final Resident resident = this.model.createResident(random);
+    final List<Stop> stops = this.model.planDay(resident, TUESDAY, random).getStops();
+
+    assertEquals(2, stops.size());
+    assertTrue(stops.get(1).getLocation().equals2D(resident.getWork()));
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.service;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.queryParam;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import one.tracking.framework.generator.hereapi.RouteResult;
+
+public class RouteFetchEngineTest {
+
+  private static final String URL = "http://localhost/routes";
+
+  private static final String RESPONSE = "{\"routes\":[{\"sections\":[{\"polyline\":\"BFoz5xJ67i1B1B7PzIhaxL7Y\"}]}]}";
+
+  private static final long BACKOFF_MILLIS = 20;
+
+  private static final int MAX_RETRIES = 2;
+
+  private final Coordinate start = new Coordinate(52.5, 13.4);
+
+  private final Coordinate end = new Coordinate(52.52, 13.41);
+
+  private final RestTemplate restTemplate = new RestTemplate();
+
+  private final MockRestServiceServer server = MockRestServiceServer.bindTo(this.restTemplate).build();
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final RouteFetchEngine engine = new RouteFetchEngine();
+
+  @Before
+  public void createEngine() {
+    ReflectionTestUtils.setField(this.engine, "restTemplate", this.restTemplate);
+    ReflectionTestUtils.setField(this.engine, "meterRegistry", this.meterRegistry);
+    ReflectionTestUtils.setField(this.engine, "apiKey", "key");
+    ReflectionTestUtils.setField(this.engine, "routeUrl", URL);
+    ReflectionTestUtils.setField(this.engine, "workers", 1);
+    // Not rate limited
+    ReflectionTestUtils.setField(this.engine, "requestsPerSecond", 0d);
+    ReflectionTestUtils.setField(this.engine, "maxRetries", MAX_RETRIES);
+    ReflectionTestUtils.setField(this.engine, "backoffMillis", BACKOFF_MILLIS);
+    ReflectionTestUtils.invokeMethod(this.engine, "init");
+  }
+
+  @After
+  public void destroyEngine() throws Exception {
+    this.engine.destroy();
+  }
+
+  @Test
+  public void returnsRoute() throws Exception {
+
+    this.server.expect(requestTo(startsWith(URL)))
+        .andExpect(queryParam("transportMode", "pedestrian"))
+        .andExpect(queryParam("origin", "52.5,13.4"))
+        .andExpect(queryParam("destination", "52.52,13.41"))
+        .andExpect(queryParam("apiKey", "key"))
+        .andRespond(withSuccess(RESPONSE, MediaType.APPLICATION_JSON));
+
+    final RouteResult result = this.engine.submit(this.start, this.end, "pedestrian").get(10, TimeUnit.SECONDS);
+
+    this.server.verify();
+    assertEquals("BFoz5xJ67i1B1B7PzIhaxL7Y", result.getRoutes().get(0).getSections().get(0).getPolyline());
+    assertEquals(1, requests("SUCCESS"));
+    assertEquals(0, this.meterRegistry.counter("generator.route.retries").count(), 0);
+  }
+
+  @Test
+  public void retriesTooManyRequestsAfterRetryAfter() throws Exception {
+
+    final HttpHeaders headers = new HttpHeaders();
+    headers.set("Retry-After", "1");
+
+    this.server.expect(requestTo(startsWith(URL)))
+        .andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS).headers(headers));
+    this.server.expect(requestTo(startsWith(URL)))
+        .andRespond(withSuccess(RESPONSE, MediaType.APPLICATION_JSON));
+
+    final long startNanos = System.nanoTime();
+    final RouteResult result = this.engine.fetch(this.start, this.end, "pedestrian");
+    final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+    this.server.verify();
+    assertEquals(1, result.getRoutes().size());
+    // Retry-After exceeds the backoff
+    assertTrue(elapsedMillis >= 1000);
+    assertEquals(1, requests("CLIENT_ERROR"));
+    assertEquals(1, requests("SUCCESS"));
+    assertEquals(1, this.meterRegistry.counter("generator.route.retries").count(), 0);
+  }
+
+  @Test
+  public void retriesServerErrorsWithBackoff() throws Exception {
+
+    this.server.expect(ExpectedCount.times(2), requestTo(startsWith(URL)))
+        .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+    this.server.expect(requestTo(startsWith(URL)))
+        .andRespond(withSuccess(RESPONSE, MediaType.APPLICATION_JSON));
+
+    final long startNanos = System.nanoTime();
+    final RouteResult result = this.engine.fetch(this.start, this.end, "pedestrian");
+    final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+    this.server.verify();
+    assertEquals(1, result.getRoutes().size());
+    // The backoff doubles with every attempt
+    assertTrue(elapsedMillis >= BACKOFF_MILLIS + 2 * BACKOFF_MILLIS);
+    assertEquals(2, requests("SERVER_ERROR"));
+    assertEquals(2, this.meterRegistry.counter("generator.route.retries").count(), 0);
+    assertEquals(0, this.meterRegistry.counter("generator.route.errors").count(), 0);
+  }
+
+  @Test
+  public void givesUpAfterMaxRetries() throws Exception {
+
+    this.server.expect(ExpectedCount.times(MAX_RETRIES + 1), requestTo(startsWith(URL)))
+        .andRespond(withStatus(HttpStatus.INTERNAL_SERVER_ERROR));
+
+    try {
+      this.engine.fetch(this.start, this.end, "pedestrian");
+      fail("Expected the last server error");
+    } catch (final HttpServerErrorException e) {
+      assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, e.getStatusCode());
+    }
+
+    this.server.verify();
+    assertEquals(MAX_RETRIES + 1, requests("SERVER_ERROR"));
+    assertEquals(MAX_RETRIES, this.meterRegistry.counter("generator.route.retries").count(), 0);
+    assertEquals(1, this.meterRegistry.counter("generator.route.errors").count(), 0);
+  }
+
+  @Test
+  public void doesNotRetryClientErrors() throws Exception {
+
+    this.server.expect(ExpectedCount.once(), requestTo(startsWith(URL)))
+        .andRespond(withStatus(HttpStatus.BAD_REQUEST));
+
+    try {
+      this.engine.fetch(this.start, this.end, "pedestrian");
+      fail("Expected the client error");
+    } catch (final HttpClientErrorException e) {
+      assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+    }
+
+    this.server.verify();
+    assertEquals(0, this.meterRegistry.counter("generator.route.retries").count(), 0);
+    assertEquals(1, this.meterRegistry.counter("generator.route.errors").count(), 0);
+  }
+
+  private long requests(final String outcome) {
+    return this.meterRegistry.timer("generator.route.requests", "outcome", outcome).count();
+  }
+}
@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import one.tracking.framework.generator.entity.SpatialEvent;
+
+public class BinarySnapshotTest {
+
+  private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+
+  private Path file;
+
+  @Before
+  public void createFile() throws IOException {
+    this.file = Files.createTempFile("snapshot", ".bin");
+  }
+
+  @After
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(this.file);
+  }
+
+  @Test
+  public void roundTripsEvents() throws IOException {
+
+    final List<SpatialEvent> events = new ArrayList<>();
+    final Instant start = Instant.parse("2020-03-10T07:30:00.123456789Z");
+    for (int i = 0; i < 7; i++) {
+      events.add(
+          event("user-a", start.plusMillis(i * 10_001L), i * 10, i, 13.4050001 + i * 1e-5, 52.5200007 - i * 1e-5));
+    }
+    events.add(event("user-ä", start.minusSeconds(3600), -5, 0, -122.4194, -37.7749));
+    for (int i = 0; i < 2; i++) {
+      events.add(event("user-b", start.plusSeconds(i), 0, 3, 0, 0));
+    }
+
+    try (final BinarySnapshotWriter writer = new BinarySnapshotWriter(this.file, 3)) {
+      for (final SpatialEvent event : events) {
+        writer.write(event);
+      }
+    }
+
+    final List<Integer> blockSizes = new ArrayList<>();
+    final List<SpatialEvent> read = new ArrayList<>();
+    final long count = new BinarySnapshotReader(this.geometryFactory).read(this.file, block -> {
+      blockSizes.add(block.size());
+      read.addAll(block);
+    });
+
+    assertEquals(events.size(), count);
+    assertEquals(events.size(), read.size());
+    // Blocks are split by user and by the maximum block size
+    assertEquals("[3, 3, 1, 1, 2]", blockSizes.toString());
+
+    for (int i = 0; i < events.size(); i++) {
+      final SpatialEvent expected = events.get(i);
+      final SpatialEvent actual = read.get(i);
+      assertEquals(expected.getUserId(), actual.getUserId());
+      assertEquals(expected.getTimestampCreate(), actual.getTimestampCreate());
+      assertEquals(expected.getTimestampOffset(), actual.getTimestampOffset());
+      assertEquals(expected.getVersion(), actual.getVersion());
+      assertEquals(expected.getLocation().getX(), actual.getLocation().getX(), 0.5e-7);
+      assertEquals(expected.getLocation().getY(), actual.getLocation().getY(), 0.5e-7);
+      assertEquals(4326, actual.getLocation().getSRID());
+    }
+  }
+
+  @Test
+  public void roundTripsEmptySnapshot() throws IOException {
+
+    new BinarySnapshotWriter(this.file, 10).close();
+
+    final List<SpatialEvent> read = new ArrayList<>();
+    assertEquals(0, new BinarySnapshotReader(this.geometryFactory).read(this.file, read::addAll));
+    assertTrue(read.isEmpty());
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsForeignFile() throws IOException {
+
+    Files.write(this.file, "userId,timestamp,location\n".getBytes(StandardCharsets.UTF_8));
+
+    new BinarySnapshotReader(this.geometryFactory).read(this.file, events -> {});
+  }
+
+  private SpatialEvent event(final String userId, final Instant timestamp, final int offset, final int version,
+      final double x, final double y) {
+    return SpatialEvent.builder()
+        .userId(userId)
+        .timestampCreate(timestamp)
+        .timestampOffset(offset)
+        .version(version)
+        .location(this.geometryFactory.createPoint(new Coordinate(x, y)))
+        .build();
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.util;
+
+import static org.junit.Assert.assertEquals;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import one.tracking.framework.generator.util.PolylineEncoderDecoder.CoordinateBuffer;
+import one.tracking.framework.generator.util.PolylineEncoderDecoder.LatLngZ;
+import one.tracking.framework.generator.util.PolylineEncoderDecoder.ThirdDimension;
+
+public class PolylineEncoderDecoderTest {
+
+  private static final String ENCODED = "BFoz5xJ67i1B1B7PzIhaxL7Y";
+
+  private static final List<LatLngZ> COORDINATES = Arrays.asList(
+      new LatLngZ(50.10228, 8.69821),
+      new LatLngZ(50.10201, 8.69567),
+      new LatLngZ(50.10063, 8.69150),
+      new LatLngZ(50.09878, 8.68752));
+
+  @Test
+  public void decodesReferencePolyline() {
+
+    final List<LatLngZ> decoded = PolylineEncoderDecoder.decode(ENCODED);
+
+    assertEquals(COORDINATES.size(), decoded.size());
+    for (int i = 0; i < COORDINATES.size(); i++) {
+      assertEquals(COORDINATES.get(i).lat, decoded.get(i).lat, 1e-9);
+      assertEquals(COORDINATES.get(i).lng, decoded.get(i).lng, 1e-9);
+    }
+  }
+
+  @Test
+  public void encodesReferencePolyline() {
+
+    assertEquals(ENCODED, PolylineEncoderDecoder.encode(COORDINATES, 5, ThirdDimension.ABSENT, 0));
+
+    final double[] lat = COORDINATES.stream().mapToDouble(c -> c.lat).toArray();
+    final double[] lng = COORDINATES.stream().mapToDouble(c -> c.lng).toArray();
+    assertEquals(ENCODED, PolylineEncoderDecoder.encode(lat, lng, null, lat.length, 5, ThirdDimension.ABSENT, 0));
+  }
+
+  @Test
+  public void roundTripsPrimitiveArrays() {
+
+    final Random random = new Random(42);
+    final int length = 1000;
+    final double[] lat = new double[length];
+    final double[] lng = new double[length];
+    final double[] z = new double[length];
+    for (int i = 0; i < length; i++) {
+      lat[i] = random.nextDouble() * 180 - 90;
+      lng[i] = random.nextDouble() * 360 - 180;
+      z[i] = random.nextInt(2000) - 100;
+    }
+
+    final String encoded =
+        PolylineEncoderDecoder.encode(lat, lng, z, length, 6, ThirdDimension.ALTITUDE, 0);
+
+    assertEquals(ThirdDimension.ALTITUDE, PolylineEncoderDecoder.getThirdDimension(encoded));
+
+    final CoordinateBuffer buffer = PolylineEncoderDecoder.decode(encoded, new CoordinateBuffer(1));
+    assertEquals(length, buffer.size());
+    for (int i = 0; i < length; i++) {
+      assertEquals(lat[i], buffer.getLat(i), 0.5e-6);
+      assertEquals(lng[i], buffer.getLng(i), 0.5e-6);
+      assertEquals(z[i], buffer.getZ(i), 0);
+    }
+  }
+
+  @Test
+  public void encodesArraysLikeList() {
+
+    final double[] lat = {52.5, 52.50001, -33.9, 0};
+    final double[] lng = {13.4, 13.40002, 151.2, -0.00001};
+    final double[] z = {1, 2, 3, 4};
+
+    final List<LatLngZ> coordinates = Arrays.asList(new LatLngZ(lat[0], lng[0], z[0]),
+        new LatLngZ(lat[1], lng[1], z[1]), new LatLngZ(lat[2], lng[2], z[2]), new LatLngZ(lat[3], lng[3], z[3]));
+
+    assertEquals(PolylineEncoderDecoder.encode(coordinates, 5, ThirdDimension.LEVEL, 0),
+        PolylineEncoderDecoder.encode(lat, lng, z, lat.length, 5, ThirdDimension.LEVEL, 0));
+  }
+
+  @Test
+  public void appendsToGivenBuilder() {
+
+    final double[] lat = COORDINATES.stream().mapToDouble(c -> c.lat).toArray();
+    final double[] lng = COORDINATES.stream().mapToDouble(c -> c.lng).toArray();
+
+    final StringBuilder builder = new StringBuilder("prefix:");
+    PolylineEncoderDecoder.encode(lat, lng, null, lat.length, 5, ThirdDimension.ABSENT, 0, builder);
+
+    assertEquals("prefix:" + ENCODED, builder.toString());
+  }
+
+  @Test
+  public void visitsDecodedCoordinates() {
+
+    final CoordinateBuffer buffer = new CoordinateBuffer();
+    buffer.add(1, 2, 3);
+
+    final int count = PolylineEncoderDecoder.decode(ENCODED, (lat, lng, z) -> buffer.add(lat, lng, z));
+
+    assertEquals(COORDINATES.size(), count);
+    assertEquals(COORDINATES.size() + 1, buffer.size());
+    assertEquals(COORDINATES.get(0).lat, buffer.getLat(1), 1e-9);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyArrays() {
+    PolylineEncoderDecoder.encode(new double[0], new double[0], null, 0, 5, ThirdDimension.ABSENT, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMissingThirdDimensionValues() {
+    PolylineEncoderDecoder.encode(new double[] {1}, new double[] {2}, null, 1, 5, ThirdDimension.LEVEL, 0);
+  }
+}
@@ -0,0 +1,116 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class RouteSamplerTest {
+
+  private static final double[] LATS = {52.52, 52.52, 52.53};
+  private static final double[] LNGS = {13.40, 13.41, 13.41};
+
+  @Test
+  public void samplesInFixedIntervalEndingAtDestination() {
+
+    final double total = GeoDistance.haversine(LATS[0], LNGS[0], LATS[1], LNGS[1])
+        + GeoDistance.haversine(LATS[1], LNGS[1], LATS[2], LNGS[2]);
+
+    final List<double[]> samples = new ArrayList<>();
+    final double duration = RouteSampler.sample(LATS, LNGS, LATS.length, 1.4, 10, collect(samples));
+
+    assertEquals(total / 1.4, duration, 1e-9);
+    assertEquals((long) Math.ceil(total / 14) + 1, samples.size());
+
+    for (int i = 0; i < samples.size() - 1; i++) {
+      assertEquals(i * 10, samples.get(i)[0], 1e-9);
+    }
+
+    final double[] first = samples.get(0);
+    assertEquals(LATS[0], first[1], 1e-12);
+    assertEquals(LNGS[0], first[2], 1e-12);
+
+    final double[] last = samples.get(samples.size() - 1);
+    assertEquals(duration, last[0], 1e-9);
+    assertEquals(LATS[2], last[1], 0);
+    assertEquals(LNGS[2], last[2], 0);
+  }
+
+  @Test
+  public void emitsDestinationOnceForExactMultipleOfStep() {
+
+    final double total = GeoDistance.haversine(LATS[0], LNGS[0], LATS[1], LNGS[1]);
+
+    final List<double[]> samples = new ArrayList<>();
+    RouteSampler.sample(LATS, LNGS, 2, total / 100, 1, collect(samples));
+
+    assertEquals(101, samples.size());
+    assertEquals(99, samples.get(99)[0], 1e-6);
+    assertEquals(100, samples.get(100)[0], 1e-6);
+    assertEquals(LNGS[1], samples.get(100)[2], 0);
+  }
+
+  @Test
+  public void emitsEveryVertexWithoutInterval() {
+
+    final List<double[]> samples = new ArrayList<>();
+    final double duration = RouteSampler.sample(LATS, LNGS, LATS.length, 2, 0, collect(samples));
+
+    assertEquals(LATS.length, samples.size());
+    for (int i = 0; i < LATS.length; i++) {
+      assertEquals(LATS[i], samples.get(i)[1], 0);
+      assertEquals(LNGS[i], samples.get(i)[2], 0);
+    }
+    assertEquals(duration, samples.get(LATS.length - 1)[0], 0);
+  }
+
+  @Test
+  public void emitsSingleVertexOnce() {
+
+    final List<double[]> samples = new ArrayList<>();
+    final double duration = RouteSampler.sample(LATS, LNGS, 1, 1.4, 10, collect(samples));
+
+    assertEquals(0, duration, 0);
+    assertEquals(1, samples.size());
+    assertEquals(0, samples.get(0)[0], 0);
+    assertEquals(LATS[0], samples.get(0)[1], 0);
+  }
+
+  @Test
+  public void emitsNothingWithoutVertices() {
+
+    final List<double[]> samples = new ArrayList<>();
+
+    assertEquals(0, RouteSampler.sample(LATS, LNGS, 0, 1.4, 10, collect(samples)), 0);
+    assertTrue(samples.isEmpty());
+  }
+
+  @Test
+  public void interpolatesAcrossAntimeridian() {
+
+    final double[] lats = {0, 0};
+    final double[] lngs = {179.999, -179.999};
+
+    final List<double[]> samples = new ArrayList<>();
+    RouteSampler.sample(lats, lngs, 2, 1, 10, collect(samples));
+
+    // About 222 m along the short way instead of around the globe
+    assertEquals(24, samples.size());
+    for (final double[] sample : samples) {
+      assertTrue("Longitude " + sample[2], Math.abs(sample[2]) >= 179.999 && Math.abs(sample[2]) <= 180);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsZeroSpeed() {
+    RouteSampler.sample(LATS, LNGS, LATS.length, 0, 10, (seconds, lat, lng) -> {});
+  }
+
+  private static RouteSampler.SampleVisitor collect(final List<double[]> samples) {
+    return (seconds, lat, lng) -> samples.add(new double[] {seconds, lat, lng});
+  }
+}
@@ -0,0 +1,57 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class TokenBucketRateLimiterTest {
+
+  @Test
+  public void allowsBurstUpToCapacity() {
+
+    final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(0.001, 3);
+
+    assertTrue(limiter.tryAcquire());
+    assertTrue(limiter.tryAcquire());
+    assertTrue(limiter.tryAcquire());
+    assertFalse(limiter.tryAcquire());
+  }
+
+  @Test
+  public void keepsAtLeastOneToken() {
+
+    final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(0.001, 0);
+
+    assertTrue(limiter.tryAcquire());
+    assertFalse(limiter.tryAcquire());
+  }
+
+  @Test
+  public void blocksUntilTokenIsRefilled() throws InterruptedException {
+
+    final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(20, 1);
+    limiter.acquire();
+
+    final long startNanos = System.nanoTime();
+    limiter.acquire();
+    final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+    assertTrue("Waited " + millis + " ms", millis >= 40);
+  }
+
+  @Test
+  public void doesNotLimitWithoutRate() throws InterruptedException {
+
+    final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(0, 1);
+
+    assertTrue(limiter.isUnlimited());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(limiter.tryAcquire());
+      limiter.acquire();
+    }
+  }
+}
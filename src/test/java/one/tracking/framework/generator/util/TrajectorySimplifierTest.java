@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package one.tracking.framework.generator.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import java.util.Random;
+import org.junit.Test;
+
+public class TrajectorySimplifierTest {
+
+  @Test
+  public void removesCollinearPositions() {
+
+    final double[] lats = new double[100];
+    final double[] lngs = new double[100];
+    for (int i = 0; i < lats.length; i++) {
+      lats[i] = 52.52 + i * 1e-5;
+      lngs[i] = 13.40 + i * 2e-5;
+    }
+
+    assertArrayEquals(new int[] {0, 99}, TrajectorySimplifier.simplify(lats, lngs, lats.length, 1));
+  }
+
+  @Test
+  public void keepsDeviationAboveTolerance() {
+
+    // The middle position deviates by about 11 m
+    final double[] lats = {52.52, 52.5201, 52.52};
+    final double[] lngs = {13.40, 13.401, 13.402};
+
+    assertArrayEquals(new int[] {0, 1, 2}, TrajectorySimplifier.simplify(lats, lngs, 3, 5));
+    assertArrayEquals(new int[] {0, 2}, TrajectorySimplifier.simplify(lats, lngs, 3, 20));
+  }
+
+  @Test
+  public void keepsAllPositionsWithoutTolerance() {
+
+    final double[] lats = {52.52, 52.52, 52.52, 52.52};
+    final double[] lngs = {13.40, 13.401, 13.402, 13.403};
+
+    assertArrayEquals(new int[] {0, 1, 2, 3}, TrajectorySimplifier.simplify(lats, lngs, 4, 0));
+    assertArrayEquals(new int[] {0, 1}, TrajectorySimplifier.simplify(lats, lngs, 2, 5));
+    assertArrayEquals(new int[0], TrajectorySimplifier.simplify(lats, lngs, 0, 5));
+  }
+
+  @Test
+  public void simplifiesAcrossAntimeridian() {
+
+    final double[] lats = {0, 0, 0, 0};
+    final double[] lngs = {179.998, 179.999, -179.999, -179.998};
+
+    assertArrayEquals(new int[] {0, 3}, TrajectorySimplifier.simplify(lats, lngs, 4, 1));
+  }
+
+  @Test
+  public void keepsRemovedPositionsWithinTolerance() {
+
+    final Random random = new Random(3);
+    final int length = 5000;
+    final double[] lats = new double[length];
+    final double[] lngs = new double[length];
+    lats[0] = 52.52;
+    lngs[0] = 13.40;
+    for (int i = 1; i < length; i++) {
+      lats[i] = lats[i - 1] + (random.nextDouble() - 0.3) * 1e-4;
+      lngs[i] = lngs[i - 1] + (random.nextDouble() - 0.3) * 1e-4;
+    }
+
+    final double tolerance = 10;
+    final int[] kept = TrajectorySimplifier.simplify(lats, lngs, length, tolerance);
+
+    assertEquals(0, kept[0]);
+    assertEquals(length - 1, kept[kept.length - 1]);
+
+    for (int k = 1; k < kept.length; k++) {
+      for (int i = kept[k - 1] + 1; i < kept[k]; i++) {
+        final double distance = distanceToSegment(lats[i], lngs[i], lats[kept[k - 1]], lngs[kept[k - 1]],
+            lats[kept[k]], lngs[kept[k]]);
+        // Allow for the difference between the projection of the simplifier and great circle distances
+        assertEquals("Position " + i, 0, distance, tolerance * 1.01);
+      }
+    }
+  }
+
+  /*
+   * The smallest great circle distance of the position to points on the segment, approximated by
+   * densely sampling the segment.
+   */
+  private static double distanceToSegment(final double lat, final double lng, final double lat1, final double lng1,
+      final double lat2, final double lng2) {
+    double min = Double.MAX_VALUE;
+    for (int i = 0; i <= 1000; i++) {
+      final double t = i / 1000.0;
+      min = Math.min(min, GeoDistance.haversine(lat, lng, lat1 + t * (lat2 - lat1), lng1 + t * (lng2 - lng1)));
+    }
+    return min;
+  }
+}